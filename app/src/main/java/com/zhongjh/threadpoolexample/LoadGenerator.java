@@ -0,0 +1,545 @@
+package com.zhongjh.threadpoolexample;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 线程池压测：按设定的到达过程(泊松、突发、爬坡)持续提交IO等待和CPU计算混合的任务，可以按比例取消任务和设置超时，
+ * 统计每种线程池的吞吐量、排队时间和端到端延迟的分位数，以及ThreadUtils线程数和堆内存的峰值
+ * 不依赖界面，可以在Linux的JVM上运行，见单元测试里的LoadGeneratorTest
+ * 是开环压测：按计划的到达时间提交，延迟也从计划的到达时间算起，线程池变慢时不会因为提交被拖慢而少算延迟
+ *
+ * @author zhongjh
+ */
+public final class LoadGenerator {
+
+    /**
+     * 泊松到达：相邻两个任务的间隔服从指数分布
+     */
+    public static final int ARRIVAL_POISSON = 0;
+    /**
+     * 突发到达：按泊松过程到达，每次同时到达burstSize个任务，平均到达率不变
+     */
+    public static final int ARRIVAL_BURSTY = 1;
+    /**
+     * 爬坡到达：到达率从0线性增加到2倍rate，平均到达率不变
+     */
+    public static final int ARRIVAL_RAMP = 2;
+
+    public static final int POOL_FIXED = 0;
+    public static final int POOL_SINGLE = 1;
+    public static final int POOL_CACHED = 2;
+    public static final int POOL_IO = 3;
+    public static final int POOL_CPU = 4;
+
+    private static final String[] ARRIVAL_NAMES = {"poisson", "bursty", "ramp"};
+    private static final String[] POOL_NAMES = {"fixed", "single", "cached", "io", "cpu"};
+
+    /**
+     * 采样线程数和堆内存的间隔
+     */
+    private static final long SAMPLE_INTERVAL_MILLIS = 10;
+
+    private int mArrival = ARRIVAL_POISSON;
+    private double mRatePerSecond = 200;
+    private int mBurstSize = 20;
+    private long mDurationMillis = 5000;
+    private double mIoRatio = 0.7;
+    private long mIoMillis = 20;
+    private long mCpuMicros = 500;
+    private double mCancelRatio;
+    private long mCancelAfterMillis = 5;
+    private double mTimeoutRatio;
+    private long mTimeoutMillis = 50;
+    private int mFixedSize = 4;
+    private long mDrainMillis = 10_000;
+
+    /**
+     * @param arrival {@link #ARRIVAL_POISSON}、{@link #ARRIVAL_BURSTY}、{@link #ARRIVAL_RAMP}
+     */
+    public LoadGenerator setArrival(@IntRange(from = ARRIVAL_POISSON, to = ARRIVAL_RAMP) final int arrival) {
+        mArrival = arrival;
+        return this;
+    }
+
+    /**
+     * @param ratePerSecond 平均每秒到达的任务数
+     */
+    public LoadGenerator setRate(final double ratePerSecond) {
+        mRatePerSecond = ratePerSecond;
+        return this;
+    }
+
+    /**
+     * @param burstSize 突发到达时每次同时到达的任务数
+     */
+    public LoadGenerator setBurstSize(@IntRange(from = 1) final int burstSize) {
+        mBurstSize = burstSize;
+        return this;
+    }
+
+    /**
+     * @param durationMillis 持续提交的时间，之后等待已经提交的任务完成
+     */
+    public LoadGenerator setDuration(@IntRange(from = 1) final long durationMillis) {
+        mDurationMillis = durationMillis;
+        return this;
+    }
+
+    /**
+     * 任务的组成：ioRatio的任务sleep模拟IO等待，其余的占用CPU计算
+     *
+     * @param ioRatio   IO任务的比例，0到1
+     * @param ioMillis  IO任务sleep的时间
+     * @param cpuMicros CPU任务计算的时间
+     */
+    public LoadGenerator setProfile(final double ioRatio, @IntRange(from = 0) final long ioMillis,
+                                    @IntRange(from = 0) final long cpuMicros) {
+        mIoRatio = ioRatio;
+        mIoMillis = ioMillis;
+        mCpuMicros = cpuMicros;
+        return this;
+    }
+
+    /**
+     * @param cancelRatio      提交后被取消的任务比例，0到1
+     * @param cancelAfterMillis 提交后多久取消
+     */
+    public LoadGenerator setCancel(final double cancelRatio, @IntRange(from = 0) final long cancelAfterMillis) {
+        mCancelRatio = cancelRatio;
+        mCancelAfterMillis = cancelAfterMillis;
+        return this;
+    }
+
+    /**
+     * 只是给这部分任务设置超时，是否超时取决于任务本身和排队情况
+     *
+     * @param timeoutRatio  设置了超时的任务比例，0到1
+     * @param timeoutMillis 超时时间
+     */
+    public LoadGenerator setTimeout(final double timeoutRatio, @IntRange(from = 1) final long timeoutMillis) {
+        mTimeoutRatio = timeoutRatio;
+        mTimeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param fixedSize {@link #POOL_FIXED}的线程数
+     */
+    public LoadGenerator setFixedSize(@IntRange(from = 1) final int fixedSize) {
+        mFixedSize = fixedSize;
+        return this;
+    }
+
+    /**
+     * @param drainMillis 停止提交后最多等待任务完成的时间，超过后还没完成的任务算作未完成
+     */
+    public LoadGenerator setDrain(@IntRange(from = 0) final long drainMillis) {
+        mDrainMillis = drainMillis;
+        return this;
+    }
+
+    /**
+     * 依次压测每种线程池
+     *
+     * @param poolTypes POOL_*
+     * @return 每种线程池的报告
+     */
+    public List<Report> runAll(final int... poolTypes) {
+        List<Report> reports = new ArrayList<>();
+        for (int poolType : poolTypes) {
+            reports.add(run(poolType));
+            // 让上一轮的空闲线程和垃圾先回收，减少对下一轮的影响
+            System.gc();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * 压测一种线程池，在调用线程中提交，直到所有任务完成或者超过等待时间才返回
+     *
+     * @param poolType POOL_*
+     * @return 报告
+     */
+    public Report run(@IntRange(from = POOL_FIXED, to = POOL_CPU) final int poolType) {
+        final Recorder recorder = new Recorder();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "load-generator-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        ScheduledFuture<?> sampler = scheduler.scheduleAtFixedRate(recorder::sample,
+                0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long startNanos = System.nanoTime();
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(mDurationMillis);
+        long arrivalNanos = startNanos;
+        for (; ; ) {
+            arrivalNanos += nextGapNanos(random, arrivalNanos - startNanos, durationNanos);
+            if (arrivalNanos - startNanos >= durationNanos) {
+                break;
+            }
+            waitUntil(arrivalNanos);
+            int count = mArrival == ARRIVAL_BURSTY ? mBurstSize : 1;
+            for (int i = 0; i < count; i++) {
+                submit(poolType, createTask(recorder, arrivalNanos, random), scheduler, random);
+            }
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mDrainMillis);
+        while (recorder.mFinishedCount.get() < recorder.mSubmittedCount.get() && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        sampler.cancel(false);
+        scheduler.shutdownNow();
+        recorder.sample();
+        return recorder.report(POOL_NAMES[poolType] + (poolType == POOL_FIXED ? "(" + mFixedSize + ")" : ""),
+                recorder.mLastFinishNanos - startNanos);
+    }
+
+    /**
+     * @param elapsedNanos 从开始到当前到达时间过了多久，爬坡时用来计算当前到达率
+     * @return 到下一次到达的间隔
+     */
+    private long nextGapNanos(ThreadLocalRandom random, long elapsedNanos, long durationNanos) {
+        // 单位到达率下的间隔，服从指数分布，1 - nextDouble()不会为0
+        double exponential = -Math.log(1 - random.nextDouble());
+        double gapSeconds;
+        if (mArrival == ARRIVAL_RAMP) {
+            // 到达率 rate(t) = k * t，累计到达数 k * t^2 / 2，下一次到达的t'满足 k * (t'^2 - t^2) / 2 = exponential
+            double k = 2 * mRatePerSecond / (durationNanos / 1e9);
+            double t = elapsedNanos / 1e9;
+            gapSeconds = Math.sqrt(t * t + 2 * exponential / k) - t;
+        } else if (mArrival == ARRIVAL_BURSTY) {
+            gapSeconds = exponential / (mRatePerSecond / mBurstSize);
+        } else {
+            gapSeconds = exponential / mRatePerSecond;
+        }
+        return Math.max(1, (long) (gapSeconds * 1e9));
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private LoadTask createTask(Recorder recorder, long arrivalNanos, ThreadLocalRandom random) {
+        LoadTask task = new LoadTask(recorder, arrivalNanos, random.nextDouble() < mIoRatio);
+        if (random.nextDouble() < mTimeoutRatio) {
+            task.setTimeout(mTimeoutMillis, () -> task.finish(Recorder.OUTCOME_TIMEOUT));
+        }
+        return task;
+    }
+
+    private void submit(int poolType, final LoadTask task, ScheduledThreadPoolExecutor scheduler,
+                        ThreadLocalRandom random) {
+        task.mRecorder.mSubmittedCount.incrementAndGet();
+        switch (poolType) {
+            case POOL_FIXED:
+                ThreadUtils.executeByFixed(mFixedSize, task);
+                break;
+            case POOL_SINGLE:
+                ThreadUtils.executeBySingle(task);
+                break;
+            case POOL_CACHED:
+                ThreadUtils.executeByCached(task);
+                break;
+            case POOL_IO:
+                ThreadUtils.executeByIo(task);
+                break;
+            default:
+                ThreadUtils.executeByCpu(task);
+                break;
+        }
+        if (random.nextDouble() < mCancelRatio) {
+            scheduler.schedule(() -> task.cancel(), mCancelAfterMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "arrival=%s rate=%.0f/s duration=%dms io=%.0f%%(%dms) cpu=%dus cancel=%.0f%% timeout=%.0f%%(%dms)",
+                ARRIVAL_NAMES[mArrival], mRatePerSecond, mDurationMillis, mIoRatio * 100, mIoMillis, mCpuMicros,
+                mCancelRatio * 100, mTimeoutRatio * 100, mTimeoutMillis);
+    }
+
+    /**
+     * 压测用的任务，sleep模拟IO等待或者忙等模拟CPU计算
+     */
+    private final class LoadTask extends ThreadUtils.BaseTask<Object> {
+
+        private final Recorder mRecorder;
+        private final long mArrivalNanos;
+        private final boolean isIo;
+        /**
+         * 超时回调和onCancel/onFail可能都会来，只记录第一次
+         */
+        private final AtomicBoolean isFinished = new AtomicBoolean();
+
+        LoadTask(Recorder recorder, long arrivalNanos, boolean isIo) {
+            mRecorder = recorder;
+            mArrivalNanos = arrivalNanos;
+            this.isIo = isIo;
+        }
+
+        @Override
+        public Object doInBackground() throws Throwable {
+            long startNanos = System.nanoTime();
+            mRecorder.recordQueueWait(startNanos - mArrivalNanos);
+            if (isIo) {
+                Thread.sleep(mIoMillis);
+            } else {
+                long end = startNanos + TimeUnit.MICROSECONDS.toNanos(mCpuMicros);
+                while (System.nanoTime() < end) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+            finish(Recorder.OUTCOME_SUCCESS);
+        }
+
+        @Override
+        public void onCancel() {
+            finish(Recorder.OUTCOME_CANCEL);
+        }
+
+        @Override
+        public void onFail(Throwable t) {
+            finish(Recorder.OUTCOME_FAIL);
+        }
+
+        private void finish(int outcome) {
+            if (isFinished.compareAndSet(false, true)) {
+                mRecorder.recordFinish(outcome, System.nanoTime() - mArrivalNanos);
+            }
+        }
+    }
+
+    /**
+     * 收集一轮压测的数据
+     */
+    private static final class Recorder {
+
+        private static final int OUTCOME_SUCCESS = 0;
+        private static final int OUTCOME_FAIL = 1;
+        private static final int OUTCOME_CANCEL = 2;
+        private static final int OUTCOME_TIMEOUT = 3;
+
+        private final AtomicInteger mSubmittedCount = new AtomicInteger();
+        private final AtomicInteger mFinishedCount = new AtomicInteger();
+        private final int[] mOutcomeCounts = new int[4];
+        private final LongList mQueueWaits = new LongList();
+        private final LongList mLatencies = new LongList();
+        private volatile long mLastFinishNanos;
+        /**
+         * 采样时写，采样线程停止后调用线程再采样一次
+         */
+        private volatile int mPeakThreads;
+        private volatile long mPeakHeapBytes;
+
+        void recordQueueWait(long nanos) {
+            synchronized (mQueueWaits) {
+                mQueueWaits.add(nanos);
+            }
+        }
+
+        void recordFinish(int outcome, long latencyNanos) {
+            synchronized (mLatencies) {
+                mOutcomeCounts[outcome]++;
+                if (outcome == OUTCOME_SUCCESS) {
+                    mLatencies.add(latencyNanos);
+                }
+                mLastFinishNanos = System.nanoTime();
+            }
+            mFinishedCount.incrementAndGet();
+        }
+
+        void sample() {
+            int threads = ThreadUtils.getThreadUsage().getLiveCount();
+            if (threads > mPeakThreads) {
+                mPeakThreads = threads;
+            }
+            Runtime runtime = Runtime.getRuntime();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            if (heap > mPeakHeapBytes) {
+                mPeakHeapBytes = heap;
+            }
+        }
+
+        Report report(String poolName, long elapsedNanos) {
+            long[] queueWaits;
+            synchronized (mQueueWaits) {
+                queueWaits = mQueueWaits.toSortedArray();
+            }
+            synchronized (mLatencies) {
+                return new Report(poolName, mSubmittedCount.get(), mOutcomeCounts.clone(), elapsedNanos,
+                        queueWaits, mLatencies.toSortedArray(), mPeakThreads, mPeakHeapBytes);
+            }
+        }
+    }
+
+    /**
+     * 不装箱的long数组
+     */
+    private static final class LongList {
+
+        private long[] mValues = new long[1024];
+        private int mSize;
+
+        void add(long value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] values = Arrays.copyOf(mValues, mSize);
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    /**
+     * 一种线程池的压测结果，时间单位都是毫秒
+     */
+    public static final class Report {
+
+        private final String mPoolName;
+        private final int mSubmittedCount;
+        private final int[] mOutcomeCounts;
+        private final long mElapsedNanos;
+        private final long[] mQueueWaits;
+        private final long[] mLatencies;
+        private final int mPeakThreads;
+        private final long mPeakHeapBytes;
+
+        private Report(String poolName, int submittedCount, int[] outcomeCounts, long elapsedNanos,
+                       long[] queueWaits, long[] latencies, int peakThreads, long peakHeapBytes) {
+            mPoolName = poolName;
+            mSubmittedCount = submittedCount;
+            mOutcomeCounts = outcomeCounts;
+            mElapsedNanos = elapsedNanos;
+            mQueueWaits = queueWaits;
+            mLatencies = latencies;
+            mPeakThreads = peakThreads;
+            mPeakHeapBytes = peakHeapBytes;
+        }
+
+        public String getPoolName() {
+            return mPoolName;
+        }
+
+        public int getSubmittedCount() {
+            return mSubmittedCount;
+        }
+
+        public int getSucceededCount() {
+            return mOutcomeCounts[Recorder.OUTCOME_SUCCESS];
+        }
+
+        public int getFailedCount() {
+            return mOutcomeCounts[Recorder.OUTCOME_FAIL];
+        }
+
+        public int getCanceledCount() {
+            return mOutcomeCounts[Recorder.OUTCOME_CANCEL];
+        }
+
+        public int getTimedOutCount() {
+            return mOutcomeCounts[Recorder.OUTCOME_TIMEOUT];
+        }
+
+        /**
+         * @return 等待结束时还没完成的任务数
+         */
+        public int getUnfinishedCount() {
+            int finished = 0;
+            for (int count : mOutcomeCounts) {
+                finished += count;
+            }
+            return mSubmittedCount - finished;
+        }
+
+        /**
+         * @return 每秒成功完成的任务数
+         */
+        public double getThroughput() {
+            return mElapsedNanos <= 0 ? 0 : getSucceededCount() * 1e9 / mElapsedNanos;
+        }
+
+        /**
+         * @param percentile 0到100
+         * @return 从计划到达到开始执行的时间
+         */
+        public double getQueueWaitMillis(double percentile) {
+            return percentileMillis(mQueueWaits, percentile);
+        }
+
+        /**
+         * @param percentile 0到100
+         * @return 成功的任务从计划到达到回调onSuccess的时间
+         */
+        public double getLatencyMillis(double percentile) {
+            return percentileMillis(mLatencies, percentile);
+        }
+
+        public int getPeakThreads() {
+            return mPeakThreads;
+        }
+
+        public long getPeakHeapBytes() {
+            return mPeakHeapBytes;
+        }
+
+        private static double percentileMillis(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-10s submitted=%d ok=%d fail=%d cancel=%d timeout=%d unfinished=%d throughput=%.1f/s"
+                            + " queueWait(p50/p90/p99/max)=%.2f/%.2f/%.2f/%.2fms"
+                            + " latency(p50/p90/p99/p99.9/max)=%.2f/%.2f/%.2f/%.2f/%.2fms"
+                            + " peakThreads=%d peakHeap=%.1fMB",
+                    mPoolName, mSubmittedCount, getSucceededCount(), getFailedCount(), getCanceledCount(),
+                    getTimedOutCount(), getUnfinishedCount(), getThroughput(),
+                    getQueueWaitMillis(50), getQueueWaitMillis(90), getQueueWaitMillis(99), getQueueWaitMillis(100),
+                    getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(99.9),
+                    getLatencyMillis(100), mPeakThreads, mPeakHeapBytes / (1024.0 * 1024.0));
+        }
+    }
+}
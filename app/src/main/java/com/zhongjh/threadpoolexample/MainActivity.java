@@ -7,13 +7,25 @@ import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
@@ -28,6 +40,20 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // 回到前台，解除onTrimMemory进入的内存紧张状态
+        ThreadUtils.onForeground();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张时让线程池释放空闲线程和排队容量
+        ThreadUtils.onTrimMemory(level);
+    }
+
     @SuppressLint("NonConstantResourceId")
     public void onClick(View view) {
         switch (view.getId()) {
@@ -94,6 +120,73 @@ public class MainActivity extends AppCompatActivity {
                 break;
             case R.id.btnFixedPeriod:
                 testFixedPeriod();
+                break;
+            case R.id.btnFixedPeriodCancel:
+                testFixedPeriodCancel();
+                break;
+            case R.id.btnCachedBurst:
+                testCachedBurst();
+                break;
+            case R.id.btnArrayQueue:
+                testArrayQueue();
+                break;
+            case R.id.btnChainedTask:
+                testChainedTask();
+                break;
+            case R.id.btnSyncValue:
+                testSyncValue();
+                break;
+            case R.id.btnTaskScope:
+                testTaskScope();
+                break;
+            case R.id.btnRetry:
+                testRetry();
+                break;
+            case R.id.btnBulkhead:
+                testBulkhead();
+                break;
+            case R.id.btnHedge:
+                testHedge();
+                break;
+            case R.id.btnPeriodTimeout:
+                testPeriodTimeout();
+                break;
+            case R.id.btnScheduleStats:
+                testScheduleStats();
+                break;
+            case R.id.btnThreadBudget:
+                testThreadBudget();
+                break;
+            case R.id.btnMemoryPressure:
+                testMemoryPressure();
+                break;
+            case R.id.btnThreadPriority:
+                testThreadPriority();
+                break;
+            case R.id.btnExecuteAll:
+                testExecuteAll();
+                break;
+            case R.id.btnLoadGenerator:
+                testLoadGenerator();
+                break;
+            case R.id.btnTaskStateRace:
+                testTaskStateRace();
+                break;
+            case R.id.btnTicketDispenser:
+                testTicketDispenser();
+                break;
+            case R.id.btnStripedCounter:
+                testStripedCounter();
+                break;
+            case R.id.btnTurnHandoff:
+                testTurnHandoff();
+                break;
+            case R.id.btnExecuteAuto:
+                testExecuteAuto();
+                break;
+            case R.id.btnQueueDelay:
+                testQueueDelayControl();
+                break;
             default:
                 break;
         }
@@ -568,4 +661,1451 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 这是测试ThreadUtils工具类的循环任务取消后是否还会唤醒线程池
+     * 先启动1000个每100毫秒执行一次的循环任务，2秒后全部取消，
+     * 之后每秒打印一次线程池被唤醒的次数和已用堆内存，取消后这两个值应该保持平稳
+     * Logcat搜索TAG为testFixedPeriodCancel
+     */
+    private void testFixedPeriodCancel() {
+        final AtomicInteger wakeUpCount = new AtomicInteger();
+        final ExecutorService pool = new ThreadPoolExecutor(4, 4,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            public void execute(Runnable command) {
+                // 记录线程池被定时器唤醒的次数
+                wakeUpCount.incrementAndGet();
+                super.execute(command);
+            }
+        };
+        final List<ThreadUtils.BaseTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ThreadUtils.BaseTask<Object> task = new ThreadUtils.BaseSimpleBaseTask<Object>() {
+                @Override
+                public Object doInBackground() {
+                    return null;
+                }
+
+                @Override
+                public void onSuccess(Object result) {
+                }
+            };
+            tasks.add(task);
+            ThreadUtils.executeByCustomAtFixRate(pool, task, 100, TimeUnit.MILLISECONDS);
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 12; i++) {
+                        if (i == 2) {
+                            ThreadUtils.cancel(tasks);
+                            Log.d("testFixedPeriodCancel", "取消全部循环任务");
+                        }
+                        Runtime runtime = Runtime.getRuntime();
+                        Log.d("testFixedPeriodCancel", "第" + i + "秒 唤醒次数：" + wakeUpCount.get()
+                                + " 已用堆内存：" + (runtime.totalMemory() - runtime.freeMemory()) / 1024 + "KB");
+                        sleep(1000);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 这是对比Cached线程池新旧两种队列的突发提交延迟
+     * 旧队列：线程数没到最大值时offer返回false，每次offer都要通过getPoolSize()获取线程池的锁
+     * 新队列：ThreadUtils.getCachedPool()，优先把任务交接给空闲线程
+     * 每轮一次性提交128个任务，统计从提交到开始执行的平均延迟和最大延迟
+     * Logcat搜索TAG为testCachedBurst
+     */
+    private void testCachedBurst() {
+        new Thread() {
+            @Override
+            public void run() {
+                OldCachedQueue oldQueue = new OldCachedQueue();
+                ThreadPoolExecutor oldPool = new ThreadPoolExecutor(0, 128,
+                        60L, TimeUnit.SECONDS,
+                        oldQueue,
+                        (r, executor) -> oldQueue.forceOffer(r));
+                oldQueue.pool = oldPool;
+                try {
+                    for (int round = 0; round < 5; round++) {
+                        burst("旧队列", oldPool);
+                        burst("新队列", ThreadUtils.getCachedPool());
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } finally {
+                    oldPool.shutdown();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 一次性提交128个任务并打印提交到开始执行的延迟
+     *
+     * @param name 名称
+     * @param pool 线程池
+     */
+    private void burst(String name, ExecutorService pool) throws InterruptedException {
+        final int count = 128;
+        final long[] latencies = new long[count];
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final long submitTime = System.nanoTime();
+            ThreadUtils.executeByCustom(pool, new ThreadUtils.BaseSimpleBaseTask<Object>() {
+                @Override
+                public Object doInBackground() throws InterruptedException {
+                    latencies[index] = System.nanoTime() - submitTime;
+                    latch.countDown();
+                    // 模拟一个短任务
+                    Thread.sleep(5);
+                    return null;
+                }
+
+                @Override
+                public void onSuccess(Object result) {
+                }
+            });
+        }
+        latch.await();
+        long sum = 0;
+        long max = 0;
+        for (long latency : latencies) {
+            sum += latency;
+            max = Math.max(max, latency);
+        }
+        Log.d("testCachedBurst", name + " 平均延迟：" + sum / count / 1000 + "us 最大延迟：" + max / 1000 + "us");
+    }
+
+    /**
+     * 旧版Cached线程池的队列，线程数没到最大值时offer返回false，让线程池先新建线程
+     */
+    private static final class OldCachedQueue extends LinkedBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 6192407835521847613L;
+
+        private volatile ThreadPoolExecutor pool;
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            if (pool != null && pool.getPoolSize() < pool.getMaximumPoolSize()) {
+                return false;
+            }
+            return super.offer(runnable);
+        }
+
+        boolean forceOffer(Runnable runnable) {
+            return super.offer(runnable);
+        }
+    }
+
+    /**
+     * 这是对比LinkedBlockingQueue和无锁数组队列的吞吐量和延迟
+     * 分别使用1、4、16个生产者，4个消费者，每个生产者入队100000个任务
+     * Logcat搜索TAG为testArrayQueue
+     */
+    private void testArrayQueue() {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int producers : new int[]{1, 4, 16}) {
+                        queueThroughput("LinkedBlockingQueue", new LinkedBlockingQueue<>(), producers);
+                        queueThroughput("ArrayBlockingQueue4Util",
+                                new ThreadUtils.ArrayBlockingQueue4Util(1024), producers);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 多个生产者同时入队，4个消费者出队，打印吞吐量和从入队到出队的平均延迟
+     *
+     * @param name      名称
+     * @param queue     队列
+     * @param producers 生产者数量
+     */
+    private void queueThroughput(String name, final BlockingQueue<Runnable> queue, int producers)
+            throws InterruptedException {
+        final int countPerProducer = 100000;
+        final int consumers = 4;
+        final int total = producers * countPerProducer;
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final AtomicLong latencySum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(consumers);
+        long start = System.nanoTime();
+        for (int i = 0; i < consumers; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    long latency = 0;
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            QueueMessage message = (QueueMessage) queue.take();
+                            latency += System.nanoTime() - message.enqueueTime;
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    latencySum.addAndGet(latency);
+                    done.countDown();
+                }
+            }.start();
+        }
+        for (int i = 0; i < producers; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < countPerProducer; j++) {
+                            queue.put(new QueueMessage(System.nanoTime()));
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        long costMillis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        Log.d("testArrayQueue", name + " 生产者：" + producers
+                + " 吞吐量：" + total / costMillis + "个/ms"
+                + " 平均延迟：" + latencySum.get() / total / 1000 + "us");
+    }
+
+    /**
+     * 队列测试用的任务，记录入队时间
+     */
+    private static final class QueueMessage implements Runnable {
+
+        private final long enqueueTime;
+
+        QueueMessage(long enqueueTime) {
+            this.enqueueTime = enqueueTime;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    /**
+     * 这是测试线程池内部提交的连续任务
+     * 8条任务链同时执行，每个任务处理完自己的数据后提交下一个任务，每条链10000个任务
+     * 对比开启了本地队列的ThreadUtils的Io线程池和线程数相同、只有共享队列的线程池
+     * Logcat搜索TAG为testChainedTask
+     */
+    private void testChainedTask() {
+        new Thread() {
+            @Override
+            public void run() {
+                int threadCount = 2 * Runtime.getRuntime().availableProcessors() + 1;
+                ThreadPoolExecutor sharedQueuePool = new ThreadPoolExecutor(threadCount, threadCount,
+                        0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>());
+                try {
+                    for (int round = 0; round < 3; round++) {
+                        chainedTask("共享队列", sharedQueuePool);
+                        chainedTask("本地队列", ThreadUtils.getIoPool());
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } finally {
+                    sharedQueuePool.shutdown();
+                }
+            }
+        }.start();
+    }
+
+    private void chainedTask(String name, ExecutorService pool) throws InterruptedException {
+        final int chainCount = 8;
+        final CountDownLatch latch = new CountDownLatch(chainCount);
+        long start = System.nanoTime();
+        for (int i = 0; i < chainCount; i++) {
+            submitChainedTask(pool, new int[1024], 10000, latch);
+        }
+        latch.await();
+        Log.d("testChainedTask", name + " 耗时：" + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * 处理数据后提交下一个任务，同一条链的任务处理同一份数据
+     *
+     * @param pool  线程池
+     * @param data  任务链的数据
+     * @param left  剩余的任务数
+     * @param latch 任务链结束时计数
+     */
+    private void submitChainedTask(final ExecutorService pool, final int[] data,
+                                   final int left, final CountDownLatch latch) {
+        ThreadUtils.executeByCustom(pool, new ThreadUtils.BaseSimpleBaseTask<Object>() {
+            @Override
+            public Object doInBackground() {
+                for (int i = 0; i < data.length; i++) {
+                    data[i] += i;
+                }
+                if (left > 0) {
+                    submitChainedTask(pool, data, left - 1, latch);
+                } else {
+                    latch.countDown();
+                }
+                return null;
+            }
+
+            @Override
+            public void onSuccess(Object result) {
+            }
+        });
+    }
+
+    /**
+     * 这是测试SyncValue的交接延迟
+     * 一个线程setValue，另一个线程getValue，每次交接都使用新的SyncValue，交接20000次
+     * 对比使用CountDownLatch和AtomicBoolean的旧实现
+     * Logcat搜索TAG为testSyncValue
+     */
+    private void testSyncValue() {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int round = 0; round < 3; round++) {
+                        syncValueHandoff("CountDownLatch", () -> {
+                            final OldSyncValue<Integer> value = new OldSyncValue<>();
+                            return new Object[]{(Runnable) () -> value.setValue(1), value};
+                        });
+                        syncValueHandoff("SyncValue", () -> {
+                            final ThreadUtils.SyncValue<Integer> value = new ThreadUtils.SyncValue<>();
+                            return new Object[]{(Runnable) () -> value.setValue(1), value};
+                        });
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 交接times次，返回平均每次的耗时
+     *
+     * @param name    名称
+     * @param factory 每次创建一个新的值，返回 {setValue的Runnable, 值}
+     */
+    private void syncValueHandoff(String name, ValueFactory factory) throws InterruptedException {
+        final int times = 20000;
+        final BlockingQueue<Object[]> values = new LinkedBlockingQueue<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < times; i++) {
+                    ((Runnable) values.take()[0]).run();
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        producer.start();
+        long total = 0;
+        for (int i = 0; i < times; i++) {
+            Object[] value = factory.create();
+            long start = System.nanoTime();
+            values.put(value);
+            if (value[1] instanceof OldSyncValue) {
+                ((OldSyncValue<?>) value[1]).getValue();
+            } else {
+                ((ThreadUtils.SyncValue<?>) value[1]).getValue();
+            }
+            total += System.nanoTime() - start;
+        }
+        producer.join();
+        Log.d("testSyncValue", name + " 平均交接耗时：" + total / times + "ns");
+    }
+
+    private interface ValueFactory {
+        Object[] create();
+    }
+
+    /**
+     * 旧的SyncValue实现，用于对比
+     */
+    private static class OldSyncValue<T> {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private final AtomicBoolean mFlag = new AtomicBoolean();
+        private T mValue;
+
+        public void setValue(T value) {
+            if (mFlag.compareAndSet(false, true)) {
+                mValue = value;
+                mLatch.countDown();
+            }
+        }
+
+        public T getValue() {
+            if (!mFlag.get()) {
+                try {
+                    mLatch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            return mValue;
+        }
+    }
+
+    /**
+     * 这是测试任务组
+     * invokeAny：3个分支请求同一份数据，第一个成功后其他分支马上被中断
+     * invokeAll：其中一个分支失败，其他分支马上被中断
+     * 带期限的invokeAll：超过期限后所有分支被中断
+     * Logcat搜索TAG为testTaskScope
+     */
+    private void testTaskScope() {
+        List<ThreadUtils.BaseTask<String>> anyTasks = new ArrayList<>();
+        anyTasks.add(new ScopeBranch("A", 800, false));
+        anyTasks.add(new ScopeBranch("B", 300, false));
+        anyTasks.add(new ScopeBranch("C", 100, true));
+        ThreadUtils.invokeAny(ThreadUtils.getIoPool(), anyTasks, new ScopeListener<>("invokeAny"));
+
+        List<ThreadUtils.BaseTask<String>> allTasks = new ArrayList<>();
+        allTasks.add(new ScopeBranch("D", 800, false));
+        allTasks.add(new ScopeBranch("E", 200, true));
+        ThreadUtils.invokeAll(ThreadUtils.getIoPool(), allTasks, new ScopeListener<>("invokeAll"));
+
+        List<ThreadUtils.BaseTask<String>> deadlineTasks = new ArrayList<>();
+        deadlineTasks.add(new ScopeBranch("F", 100, false));
+        deadlineTasks.add(new ScopeBranch("G", 2000, false));
+        ThreadUtils.invokeAll(ThreadUtils.getIoPool(), deadlineTasks, 500, TimeUnit.MILLISECONDS,
+                new ScopeListener<>("invokeAll 500ms"));
+    }
+
+    /**
+     * 任务组里的一个分支，睡眠millis后返回或者失败
+     */
+    private static class ScopeBranch extends ThreadUtils.BaseSimpleBaseTask<String> {
+
+        private final String name;
+        private final long millis;
+        private final boolean isFail;
+
+        ScopeBranch(String name, long millis, boolean isFail) {
+            this.name = name;
+            this.millis = millis;
+            this.isFail = isFail;
+        }
+
+        @Override
+        public String doInBackground() throws Throwable {
+            long start = System.currentTimeMillis();
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Log.d("testTaskScope", "分支" + name + " 执行" + (System.currentTimeMillis() - start) + "ms后被中断");
+                throw e;
+            }
+            if (isFail) {
+                throw new IllegalStateException("分支" + name + " 失败");
+            }
+            return name;
+        }
+
+        @Override
+        public void onSuccess(String result) {
+        }
+
+        @Override
+        public void onCancel() {
+        }
+    }
+
+    private static class ScopeListener<R> implements ThreadUtils.OnScopeListener<R> {
+
+        private final String name;
+
+        ScopeListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onSuccess(R result) {
+            Log.d("testTaskScope", name + " 成功：" + result);
+        }
+
+        @Override
+        public void onFail(Throwable t) {
+            Log.d("testTaskScope", name + " 失败：" + t);
+        }
+
+        @Override
+        public void onCancel() {
+            Log.d("testTaskScope", name + " 取消");
+        }
+    }
+
+    /**
+     * 这是测试失败重试
+     * 模拟后端抖动，前3次请求失败，第4次成功，退避200ms开始，每次乘以2
+     * 退避期间任务不占用IO线程池的线程，只有最后一次失败才会回调onFail
+     * Logcat搜索TAG为testRetry
+     */
+    private void testRetry() {
+        final long start = System.currentTimeMillis();
+        ThreadUtils.BaseTask<String> task = new ThreadUtils.BaseSimpleBaseTask<String>() {
+            @Override
+            public String doInBackground() throws Throwable {
+                Log.d("testRetry", "第" + getAttempt() + "次执行，距离开始" + (System.currentTimeMillis() - start) + "ms");
+                if (getAttempt() <= 3) {
+                    throw new IOException("后端暂时不可用");
+                }
+                return "成功";
+            }
+
+            @Override
+            public void onSuccess(String result) {
+                Log.d("testRetry", result + "，共执行" + getAttempt() + "次");
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                Log.d("testRetry", "最终失败：" + t);
+            }
+        };
+        task.setRetryPolicy(new ThreadUtils.RetryPolicy(5)
+                .setBackoff(200, 2000, 2)
+                .setJitter(0.5)
+                .setDeadline(10000)
+                .setRetryOn(t -> t instanceof IOException));
+        ThreadUtils.executeByIo(task);
+    }
+
+    /**
+     * 这是测试舱壁隔离
+     * 统计模块出问题，每个任务卡住3秒，图片模块的任务只需要50ms，两个模块共用IO线程池
+     * 统计模块被限制最多同时执行2个任务、排队10个，超过的直接失败，图片模块不受影响
+     * Logcat搜索TAG为testBulkhead
+     */
+    private void testBulkhead() {
+        final ThreadUtils.Bulkhead analytics = ThreadUtils.getBulkhead("analytics", ThreadUtils.getIoPool(), 2, 10);
+        final ThreadUtils.Bulkhead images = ThreadUtils.getBulkhead("images", ThreadUtils.getIoPool(), 4, 100);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            ThreadUtils.executeByCustom(analytics, new BulkheadTask(3000, null));
+        }
+        final AtomicInteger imageCount = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            ThreadUtils.executeByCustom(images, new BulkheadTask(50, () -> {
+                if (imageCount.incrementAndGet() == 40) {
+                    Log.d("testBulkhead", "图片模块全部完成，耗时：" + (System.currentTimeMillis() - start) + "ms");
+                    Log.d("testBulkhead", analytics.toString());
+                    Log.d("testBulkhead", images.toString());
+                }
+            }));
+        }
+    }
+
+    private static class BulkheadTask extends ThreadUtils.BaseSimpleBaseTask<Object> {
+
+        private final long millis;
+        private final Runnable onSuccess;
+
+        BulkheadTask(long millis, Runnable onSuccess) {
+            this.millis = millis;
+            this.onSuccess = onSuccess;
+        }
+
+        @Override
+        public Object doInBackground() throws Throwable {
+            Thread.sleep(millis);
+            return null;
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+            if (onSuccess != null) {
+                onSuccess.run();
+            }
+        }
+    }
+
+    /**
+     * 这是测试对冲请求
+     * 模拟一个接口，95%的请求5~15ms，5%的请求卡住300ms
+     * 对比不对冲(预算为0)和按p95延迟对冲(最多额外10%请求)的p50、p99延迟
+     * Logcat搜索TAG为testHedge
+     */
+    private void testHedge() {
+        new Thread() {
+            @Override
+            public void run() {
+                ThreadUtils.getHedgePolicy("noHedge").setBudget(0, 1);
+                ThreadUtils.getHedgePolicy("hedge").setPercentileDelay(0.95, 50).setBudget(0.1, 10);
+                try {
+                    hedgeLatency("noHedge");
+                    hedgeLatency("hedge");
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    private void hedgeLatency(final String key) throws InterruptedException {
+        final int count = 400;
+        final long[] latencies = new long[count];
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            ThreadUtils.executeHedged(ThreadUtils.getIoPool(), key, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Thread.sleep(random.nextInt(100) < 5 ? 300 : 5 + random.nextInt(10));
+                return index;
+            }, new ThreadUtils.OnScopeListener<Integer>() {
+                @Override
+                public void onSuccess(Integer result) {
+                    latencies[index] = (System.nanoTime() - start) / 1000000;
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onCancel() {
+                    latch.countDown();
+                }
+            });
+            Thread.sleep(5);
+        }
+        latch.await();
+        Arrays.sort(latencies);
+        Log.d("testHedge", key + " p50：" + latencies[count / 2] + "ms p99：" + latencies[count * 99 / 100] + "ms");
+        Log.d("testHedge", ThreadUtils.getHedgePolicy(key).toString());
+    }
+
+    /**
+     * 这是测试循环任务的超时
+     * 每500ms轮询一次，每3次有1次卡住10秒，超时设置为1秒
+     * 卡住的这一次会被中断并回调onTimeout，轮询继续，5秒后取消
+     * Logcat搜索TAG为testPeriodTimeout
+     */
+    private void testPeriodTimeout() {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadUtils.BaseTask<Integer> task = new ThreadUtils.BaseSimpleBaseTask<Integer>() {
+            @Override
+            public Integer doInBackground() throws Throwable {
+                int iteration = count.incrementAndGet();
+                Thread.sleep(iteration % 3 == 0 ? 10000 : 100);
+                return iteration;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+                Log.d("testPeriodTimeout", "第" + result + "次轮询完成");
+            }
+        };
+        task.setTimeout(1000, () -> Log.d("testPeriodTimeout", "第" + count.get() + "次轮询超时，已中断"));
+        ThreadUtils.executeByIoAtFixRate(task, 500, TimeUnit.MILLISECONDS);
+        ThreadUtils.runOnUiThreadDelayed(task::cancel, 5000);
+    }
+
+    /**
+     * 这是测试循环任务的调度统计
+     * 同一个轮询任务(每次耗时0~150ms)分别用固定速率和固定延迟每100ms执行一次，IO线程池同时被其他任务占满
+     * 10秒后打印两种方式的漂移、抖动和错过次数
+     * Logcat搜索TAG为testScheduleStats
+     */
+    private void testScheduleStats() {
+        final ThreadUtils.BaseTask<Object> fixedRate = new PollTask();
+        final ThreadUtils.BaseTask<Object> fixedDelay = new PollTask();
+        ThreadUtils.executeByIoAtFixRate(fixedRate, 100, TimeUnit.MILLISECONDS);
+        ThreadUtils.executeByIoWithFixedDelay(fixedDelay, 0, 100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 200; i++) {
+            ThreadUtils.executeByIo(new BulkheadTask(40, null));
+        }
+        ThreadUtils.runOnUiThreadDelayed(() -> {
+            Log.d("testScheduleStats", String.valueOf(fixedRate.getScheduleStats()));
+            Log.d("testScheduleStats", String.valueOf(fixedDelay.getScheduleStats()));
+            fixedRate.cancel();
+            fixedDelay.cancel();
+        }, 10000);
+    }
+
+    private static class PollTask extends ThreadUtils.BaseSimpleBaseTask<Object> {
+
+        @Override
+        public Object doInBackground() throws Throwable {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(150));
+            return null;
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+        }
+    }
+
+    /**
+     * 这是测试线程预算
+     * 设置所有线程池最多16个线程，然后往大小为4的不同优先级的固定线程池、IO线程池、缓存线程池各提交100个任务
+     * 相同大小的固定线程池共用一组线程，预算用完后任务排队等待，打印每个线程池的线程使用情况
+     * Logcat搜索TAG为testThreadBudget
+     */
+    private void testThreadBudget() {
+        ThreadUtils.setThreadBudget(16);
+        final ExecutorService[] pools = {
+                ThreadUtils.getFixedPool(4),
+                ThreadUtils.getFixedPool(4, Thread.MAX_PRIORITY),
+                ThreadUtils.getIoPool(),
+                ThreadUtils.getCachedPool()
+        };
+        final CountDownLatch latch = new CountDownLatch(pools.length * 100);
+        for (ExecutorService pool : pools) {
+            for (int i = 0; i < 100; i++) {
+                pool.execute(() -> {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    latch.countDown();
+                });
+            }
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                Log.d("testThreadBudget", ThreadUtils.getThreadUsage().toString());
+            }
+        }.start();
+    }
+
+    /**
+     * 内存紧张：空闲线程退出，低优先级任务推迟到恢复后执行，普通线程池排队超过上限的任务回调onFail
+     */
+    private void testMemoryPressure() {
+        final ExecutorService pool = ThreadUtils.getFixedPool(4);
+        final ExecutorService lowPool = ThreadUtils.getFixedPool(2, Thread.MIN_PRIORITY);
+        for (int i = 0; i < 8; i++) {
+            pool.execute(() -> {
+            });
+        }
+        ThreadUtils.setMemoryPressureQueueLimit(4);
+        ThreadUtils.setMemoryPressure(true);
+        final AtomicInteger lowCount = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            lowPool.execute(lowCount::incrementAndGet);
+        }
+        final AtomicInteger successCount = new AtomicInteger();
+        final AtomicInteger failCount = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            ThreadUtils.executeByFixed(4, new ThreadUtils.BaseSimpleBaseTask<Object>() {
+                @Override
+                public Object doInBackground() throws Throwable {
+                    Thread.sleep(100);
+                    return null;
+                }
+
+                @Override
+                public void onSuccess(Object result) {
+                    successCount.incrementAndGet();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    failCount.incrementAndGet();
+                }
+            });
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                Log.d("testMemoryPressure", "success: " + successCount + " fail: " + failCount
+                        + " low priority ran: " + lowCount + "\n" + ThreadUtils.getThreadUsage());
+                ThreadUtils.setMemoryPressure(false);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                Log.d("testMemoryPressure", "after recover, low priority ran: " + lowCount);
+            }
+        }.start();
+    }
+
+    /**
+     * CPU竞争：低优先级和高优先级线程池同时执行同样的计算任务，CPU不够用时高优先级的任务先完成
+     */
+    private void testThreadPriority() {
+        Log.d("testThreadPriority", "backend: " + ThreadUtils.getThreadPriorityBackend().getClass().getSimpleName());
+        final int count = Runtime.getRuntime().availableProcessors() * 2;
+        final ExecutorService lowPool = ThreadUtils.getFixedPool(count, Thread.MIN_PRIORITY);
+        final ExecutorService highPool = ThreadUtils.getFixedPool(count, Thread.MAX_PRIORITY);
+        final AtomicLong lowDoneMillis = new AtomicLong();
+        final AtomicLong highDoneMillis = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(count * 2);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            lowPool.execute(() -> {
+                burnCpu();
+                lowDoneMillis.addAndGet(System.currentTimeMillis() - start);
+                latch.countDown();
+            });
+            highPool.execute(() -> {
+                burnCpu();
+                highDoneMillis.addAndGet(System.currentTimeMillis() - start);
+                latch.countDown();
+            });
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                Log.d("testThreadPriority", "average done millis, low: " + lowDoneMillis.get() / count
+                        + " high: " + highDoneMillis.get() / count);
+            }
+        }.start();
+    }
+
+    private static volatile long sCpuSink;
+
+    private static void burnCpu() {
+        long x = 0;
+        for (long i = 0; i < 100_000_000L; i++) {
+            x += i ^ (x >> 3);
+        }
+        // 写到volatile字段，防止计算被优化掉
+        sCpuSink = x;
+    }
+
+    /**
+     * 批量提交：同样500个任务逐个提交和一次提交，对比主线程上提交花费的时间
+     */
+    private void testExecuteAll() {
+        final int count = 500;
+        List<ThreadUtils.BaseTask<Integer>> oneByOne = createCountTasks(count);
+        long start = System.nanoTime();
+        for (ThreadUtils.BaseTask<Integer> task : oneByOne) {
+            ThreadUtils.executeByIo(task);
+        }
+        long oneByOneMicros = (System.nanoTime() - start) / 1000;
+        List<ThreadUtils.BaseTask<Integer>> bulk = createCountTasks(count);
+        start = System.nanoTime();
+        ThreadUtils.executeAllByIo(bulk);
+        long bulkMicros = (System.nanoTime() - start) / 1000;
+        Log.d("testExecuteAll", "submit " + count + " tasks, one by one: " + oneByOneMicros + "us, bulk: " + bulkMicros + "us");
+    }
+
+    private List<ThreadUtils.BaseTask<Integer>> createCountTasks(int count) {
+        List<ThreadUtils.BaseTask<Integer>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int finalI = i;
+            tasks.add(new ThreadUtils.BaseSimpleBaseTask<Integer>() {
+                @Override
+                public Integer doInBackground() {
+                    return finalI;
+                }
+
+                @Override
+                public void onSuccess(Integer result) {
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * 压测：泊松到达，70%的IO任务和30%的CPU任务，5%取消、5%设置超时，每种线程池跑2秒
+     */
+    private void testLoadGenerator() {
+        new Thread() {
+            @Override
+            public void run() {
+                LoadGenerator generator = new LoadGenerator()
+                        .setArrival(LoadGenerator.ARRIVAL_POISSON)
+                        .setRate(200)
+                        .setDuration(2000)
+                        .setCancel(0.05, 5)
+                        .setTimeout(0.05, 50);
+                Log.d("testLoadGenerator", generator.toString());
+                List<LoadGenerator.Report> reports = generator.runAll(LoadGenerator.POOL_FIXED, LoadGenerator.POOL_SINGLE,
+                        LoadGenerator.POOL_CACHED, LoadGenerator.POOL_IO, LoadGenerator.POOL_CPU);
+                for (LoadGenerator.Report report : reports) {
+                    Log.d("testLoadGenerator", report.toString());
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 状态机竞争：大量任务同时面对完成、失败、取消和超时，每个任务只能有一次结束回调
+     */
+    private void testTaskStateRace() {
+        final int count = 10000;
+        final AtomicInteger[] callbacks = new AtomicInteger[count];
+        final AtomicInteger duplicateCount = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(count);
+        final ExecutorService canceller = ThreadUtils.getFixedPool(2);
+        for (int i = 0; i < count; i++) {
+            callbacks[i] = new AtomicInteger();
+            final AtomicInteger callback = callbacks[i];
+            final boolean isFail = i % 3 == 2;
+            final Runnable onEnd = () -> {
+                if (callback.incrementAndGet() > 1) {
+                    duplicateCount.incrementAndGet();
+                } else {
+                    latch.countDown();
+                }
+            };
+            final ThreadUtils.BaseTask<Integer> task = new ThreadUtils.BaseTask<Integer>() {
+                @Override
+                public Integer doInBackground() throws Throwable {
+                    long end = System.nanoTime() + ThreadLocalRandom.current().nextInt(200) * 1000L;
+                    while (System.nanoTime() < end) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                    if (isFail) {
+                        throw new IOException("fail");
+                    }
+                    return 0;
+                }
+
+                @Override
+                public void onSuccess(Integer result) {
+                    onEnd.run();
+                }
+
+                @Override
+                public void onCancel() {
+                    onEnd.run();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    onEnd.run();
+                }
+            };
+            task.setDeliver(Runnable::run);
+            if (i % 3 == 0) {
+                task.setTimeout(ThreadLocalRandom.current().nextInt(1, 3), onEnd::run);
+            }
+            ThreadUtils.executeByIo(task);
+            if (i % 4 == 0) {
+                canceller.execute(() -> task.cancel(ThreadLocalRandom.current().nextBoolean()));
+            }
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    boolean isAllDone = latch.await(60, SECONDS);
+                    Log.d("testTaskStateRace", "all done: " + isAllDone + ", missing: " + latch.getCount()
+                            + ", duplicate callbacks: " + duplicateCount);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 售票吞吐量：同样的票数分别用对象锁、同步块、类锁和{@link TicketDispenser}在1到64个线程下卖完，
+     * 对比每秒卖出的票数，并检查每种方式都刚好卖出全部的票
+     */
+    private void testTicketDispenser() {
+        new Thread() {
+            @Override
+            public void run() {
+                final int total = 200000;
+                int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+                for (int threadCount : threadCounts) {
+                    final SynchronizedEntity methodEntity = new SynchronizedEntity(total);
+                    final SynchronizedEntity thisEntity = new SynchronizedEntity(total);
+                    final SynchronizedEntity classEntity = new SynchronizedEntity(total);
+                    final TicketDispenser dispenser = new TicketDispenser(total);
+                    sellTickets("syncMethod", threadCount, total, methodEntity::sellMethod, null);
+                    sellTickets("syncThis", threadCount, total, thisEntity::sellThis, null);
+                    sellTickets("syncClassMethod", threadCount, total, classEntity::sellClass, null);
+                    sellTickets("TicketDispenser", threadCount, total, dispenser::tryClaim, dispenser::release);
+                    Log.d("testTicketDispenser", "threads " + threadCount + " remaining: " + methodEntity.getTicket()
+                            + "/" + thisEntity.getTicket() + "/" + classEntity.getTicket() + "/" + dispenser.getRemaining());
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 多个线程同时卖票直到卖完
+     *
+     * @param sell      卖一张票，返回是否卖出
+     * @param onFinish  每个线程卖完后执行，可以为null
+     */
+    private void sellTickets(String name, int threadCount, int total, final Callable<Boolean> sell, final Runnable onFinish) {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch endLatch = new CountDownLatch(threadCount);
+        final AtomicInteger soldCount = new AtomicInteger();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    int sold = 0;
+                    try {
+                        startLatch.await();
+                        while (sell.call()) {
+                            sold++;
+                        }
+                        if (onFinish != null) {
+                            onFinish.run();
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        soldCount.addAndGet(sold);
+                        endLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        try {
+            endLatch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+        long costNanos = System.nanoTime() - start;
+        Log.d("testTicketDispenser", name + " threads " + threadCount + ": " + total * 1000L / Math.max(costNanos / 1000000, 1)
+                + " tickets/s, sold " + soldCount.get() + (soldCount.get() == total ? "" : " != " + total));
+    }
+
+    /**
+     * 计数器吞吐量：volatile、同步方法、AtomicLong和{@link StripedCounter}在1到64个线程下各自增同样的次数，
+     * 对比每秒自增次数和最后的计数是否正确；最后演示{@link StripedCounter.RateCounter}定期取快照统计速率
+     */
+    private void testStripedCounter() {
+        new Thread() {
+            @Override
+            public void run() {
+                final int countPerThread = 200000;
+                int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+                for (int threadCount : threadCounts) {
+                    final Test test = new Test();
+                    long expected = (long) countPerThread * threadCount;
+                    long volatileCost = increaseConcurrently(threadCount, countPerThread, test::increase);
+                    long syncCost = increaseConcurrently(threadCount, countPerThread, test::increaseSync);
+                    long atomicCost = increaseConcurrently(threadCount, countPerThread, test::increaseAtomic);
+                    long stripedCost = increaseConcurrently(threadCount, countPerThread, test::increaseStriped);
+                    Log.d("testStripedCounter", "threads " + threadCount
+                            + " volatile: " + expected * 1000 / volatileCost + " ops/ms, count " + test.inc
+                            + " | synchronized: " + expected * 1000 / syncCost + " ops/ms, count " + test.getSyncInc()
+                            + " | atomic: " + expected * 1000 / atomicCost + " ops/ms, count " + test.atomicInc.get()
+                            + " | striped: " + expected * 1000 / stripedCost + " ops/ms, count " + test.stripedInc.sum()
+                            + " | expected " + expected);
+                }
+
+                final StripedCounter.RateCounter rateCounter = new StripedCounter.RateCounter();
+                rateCounter.startSnapshot(500, (count, rate) ->
+                        Log.d("testStripedCounter", "snapshot count " + count + ", rate " + (long) rate + "/s"));
+                final long end = System.currentTimeMillis() + 2000;
+                increaseConcurrently(4, Integer.MAX_VALUE, () -> {
+                    if (System.currentTimeMillis() < end) {
+                        rateCounter.increment();
+                    } else {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                rateCounter.stopSnapshot();
+                Log.d("testStripedCounter", rateCounter.toString());
+            }
+        }.start();
+    }
+
+    /**
+     * 多个线程同时执行同样次数的自增，线程被中断时提前结束
+     *
+     * @return 耗时，微秒，至少为1
+     */
+    private long increaseConcurrently(int threadCount, final int countPerThread, final Runnable increase) {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch endLatch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < countPerThread && !isInterrupted(); j++) {
+                            increase.run();
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    } finally {
+                        endLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        try {
+            endLatch.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return Math.max((System.nanoTime() - start) / 1000, 1);
+    }
+
+    /**
+     * 用{@link TurnHandoff}实现{@link #testWaitNotify()}同样的轮流执行，然后对比wait/notify、SynchronousQueue、
+     * Exchanger和TurnHandoff两个线程之间一次来回的延迟
+     */
+    private void testTurnHandoff() {
+        new Thread() {
+            @Override
+            public void run() {
+                final TurnHandoff<String> handoff = new TurnHandoff<>(TurnHandoff.PARTY_B);
+                Thread sub = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 10; i++) {
+                                String from = handoff.awaitTurn(TurnHandoff.PARTY_B);
+                                for (int j = 0; j < 2; j++) {
+                                    Log.d("testTurnHandoff", "子循环第" + (j + 1) + "次，上一轮：" + from);
+                                }
+                                handoff.passTurn(TurnHandoff.PARTY_B, "子线程");
+                            }
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                sub.start();
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        String from = handoff.awaitTurn(TurnHandoff.PARTY_A);
+                        for (int j = 0; j < 3; j++) {
+                            Log.d("testTurnHandoff", "主循环第" + (j + 1) + "次，上一轮：" + from);
+                        }
+                        handoff.passTurn(TurnHandoff.PARTY_A, "主线程");
+                    }
+                    sub.join();
+                    int roundTrips = 20000;
+                    for (int i = 0; i < 2; i++) {
+                        // 第一遍预热
+                        boolean isLog = i == 1;
+                        logRoundTrip("wait/notify", measureWaitNotify(roundTrips), isLog);
+                        logRoundTrip("SynchronousQueue", measureSynchronousQueue(roundTrips), isLog);
+                        logRoundTrip("Exchanger", measureExchanger(roundTrips), isLog);
+                        logRoundTrip("TurnHandoff", measureTurnHandoff(roundTrips), isLog);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    private void logRoundTrip(String name, long[] nanos, boolean isLog) {
+        if (!isLog) {
+            return;
+        }
+        Arrays.sort(nanos);
+        long sum = 0;
+        for (long nano : nanos) {
+            sum += nano;
+        }
+        Log.d("testTurnHandoff", name + " round trip avg " + sum / nanos.length + "ns, p50 "
+                + nanos[nanos.length / 2] + "ns, p99 " + nanos[(int) (nanos.length * 0.99)] + "ns");
+    }
+
+    /**
+     * 以下每个方法都由当前线程发起，另一个线程收到后交回，记录每次来回的耗时
+     */
+    private long[] measureWaitNotify(final int roundTrips) throws InterruptedException {
+        final Object waitLock = new Object();
+        // 0：轮到发起方，1：轮到回应方
+        final int[] turn = {0};
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < roundTrips; i++) {
+                        synchronized (waitLock) {
+                            while (turn[0] != 1) {
+                                waitLock.wait();
+                            }
+                            turn[0] = 0;
+                            waitLock.notify();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        echo.start();
+        long[] nanos = new long[roundTrips];
+        for (int i = 0; i < roundTrips; i++) {
+            long start = System.nanoTime();
+            synchronized (waitLock) {
+                turn[0] = 1;
+                waitLock.notify();
+                while (turn[0] != 0) {
+                    waitLock.wait();
+                }
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        return nanos;
+    }
+
+    private long[] measureSynchronousQueue(final int roundTrips) throws InterruptedException {
+        final SynchronousQueue<Object> ping = new SynchronousQueue<>();
+        final SynchronousQueue<Object> pong = new SynchronousQueue<>();
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < roundTrips; i++) {
+                        pong.put(ping.take());
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        echo.start();
+        Object payload = new Object();
+        long[] nanos = new long[roundTrips];
+        for (int i = 0; i < roundTrips; i++) {
+            long start = System.nanoTime();
+            ping.put(payload);
+            pong.take();
+            nanos[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        return nanos;
+    }
+
+    private long[] measureExchanger(final int roundTrips) throws InterruptedException {
+        final Exchanger<Object> exchanger = new Exchanger<>();
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < roundTrips; i++) {
+                        // 第一次换到发起方的数据，第二次把它交回去
+                        Object received = exchanger.exchange(null);
+                        exchanger.exchange(received);
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        echo.start();
+        Object payload = new Object();
+        long[] nanos = new long[roundTrips];
+        for (int i = 0; i < roundTrips; i++) {
+            long start = System.nanoTime();
+            exchanger.exchange(payload);
+            exchanger.exchange(null);
+            nanos[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        return nanos;
+    }
+
+    private long[] measureTurnHandoff(final int roundTrips) throws InterruptedException {
+        final TurnHandoff<Object> handoff = new TurnHandoff<>(TurnHandoff.PARTY_A);
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < roundTrips; i++) {
+                        handoff.passTurn(TurnHandoff.PARTY_B, handoff.awaitTurn(TurnHandoff.PARTY_B));
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        echo.start();
+        Object payload = new Object();
+        long[] nanos = new long[roundTrips];
+        for (int i = 0; i < roundTrips; i++) {
+            long start = System.nanoTime();
+            handoff.handoff(TurnHandoff.PARTY_A, payload);
+            nanos[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        return nanos;
+    }
+
+    /**
+     * 自动路由：同一个任务类先阻塞后计算，executeAuto()先把它放在IO线程池，变成计算后改到CPU线程池
+     */
+    private void testExecuteAuto() {
+        ThreadUtils.clearAutoRoutes();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int phase = 0; phase < 2; phase++) {
+                        AutoRouteTask.sIsBlocking = phase == 0;
+                        CountDownLatch latch = new CountDownLatch(40);
+                        for (int i = 0; i < 40; i++) {
+                            ThreadUtils.executeAuto(new AutoRouteTask(latch));
+                            Thread.sleep(25);
+                        }
+                        latch.await();
+                        Log.d("testExecuteAuto", (phase == 0 ? "blocking: " : "computing: ")
+                                + ThreadUtils.getAutoRoutes().get(AutoRouteTask.class));
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 每次执行阻塞或者计算20毫秒
+     */
+    private static class AutoRouteTask extends ThreadUtils.BaseTask<Long> {
+
+        private static volatile boolean sIsBlocking;
+        private final CountDownLatch mLatch;
+
+        AutoRouteTask(CountDownLatch latch) {
+            mLatch = latch;
+        }
+
+        @Override
+        public Long doInBackground() throws Throwable {
+            if (sIsBlocking) {
+                Thread.sleep(20);
+                return 0L;
+            }
+            long end = System.nanoTime() + 20_000_000L;
+            long x = 0;
+            while (System.nanoTime() < end) {
+                x += x >> 3 ^ end;
+            }
+            return x;
+        }
+
+        @Override
+        public void onSuccess(Long result) {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onCancel() {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onFail(Throwable t) {
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * 排队延迟控制：2个线程每个任务10毫秒，每秒200个的处理能力，按每秒500个提交低优先级的任务，
+     * 不开启时排队时间一直变长；开启后过载时新任务快速失败，执行的任务排队时间有上限
+     */
+    private void testQueueDelayControl() {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        boolean isControl = i == 1;
+                        if (isControl) {
+                            ThreadUtils.setQueueDelayControl(20, 100);
+                        }
+                        final AtomicInteger successCount = new AtomicInteger();
+                        final AtomicInteger overloadCount = new AtomicInteger();
+                        final AtomicLong maxDelayMillis = new AtomicLong();
+                        final CountDownLatch latch = new CountDownLatch(400);
+                        for (int j = 0; j < 400; j++) {
+                            final long submitNanos = System.nanoTime();
+                            ThreadUtils.executeByFixed(2, new ThreadUtils.BaseTask<Void>() {
+                                @Override
+                                public Void doInBackground() throws Throwable {
+                                    long delayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitNanos);
+                                    long max;
+                                    while ((max = maxDelayMillis.get()) < delayMillis
+                                            && !maxDelayMillis.compareAndSet(max, delayMillis)) {
+                                        // 更新最大排队时间
+                                    }
+                                    Thread.sleep(10);
+                                    return null;
+                                }
+
+                                @Override
+                                public void onSuccess(Void result) {
+                                    successCount.incrementAndGet();
+                                    latch.countDown();
+                                }
+
+                                @Override
+                                public void onCancel() {
+                                    latch.countDown();
+                                }
+
+                                @Override
+                                public void onFail(Throwable t) {
+                                    if (t instanceof ThreadUtils.OverloadException) {
+                                        overloadCount.incrementAndGet();
+                                    }
+                                    latch.countDown();
+                                }
+                            }.setDeliver(Runnable::run), Thread.NORM_PRIORITY - 1);
+                            Thread.sleep(2);
+                        }
+                        latch.await();
+                        Log.d("testQueueDelayControl", (isControl ? "control" : "no control") + ": success " + successCount
+                                + ", overload " + overloadCount + ", max queue delay " + maxDelayMillis + "ms");
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } finally {
+                    ThreadUtils.disableQueueDelayControl();
+                }
+            }
+        }.start();
+    }
+}
@@ -0,0 +1,216 @@
+package com.zhongjh.threadpoolexample;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 高并发计数器，用来代替{@link Test}里面volatile变量自增的写法
+ * volatile的inc++不是原子操作会丢失计数，改成加锁或者AtomicInteger后又所有线程竞争同一个缓存行；
+ * 这里把计数分散到多个填充过的分段里，每个线程只加自己的分段，需要总数时再把所有分段加起来
+ * 加计数很便宜，求和相对较贵，适合写多读少的统计
+ *
+ * @author zhongjh
+ * @date 2026/10/19
+ */
+public class StripedCounter {
+
+    /**
+     * 每个线程当前使用的分段，CAS失败说明和别的线程撞到了同一个分段，换一个
+     */
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[]{ThreadUtils.Stripe4Util.threadHash()};
+        }
+    };
+
+    private final ThreadUtils.PaddedAtomicLong[] mStripes;
+    private final int mMask;
+
+    public StripedCounter() {
+        this(ThreadUtils.Stripe4Util.DEFAULT_COUNT);
+    }
+
+    /**
+     * @param stripeCount 分段数，会向上取整为2的幂
+     */
+    public StripedCounter(@IntRange(from = 1) int stripeCount) {
+        int count = ThreadUtils.Stripe4Util.ceilPowerOfTwo(stripeCount);
+        mStripes = new ThreadUtils.PaddedAtomicLong[count];
+        for (int i = 0; i < count; i++) {
+            mStripes[i] = new ThreadUtils.PaddedAtomicLong();
+        }
+        mMask = count - 1;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    public void add(long x) {
+        int[] probe = PROBE.get();
+        ThreadUtils.PaddedAtomicLong stripe = mStripes[probe[0] & mMask];
+        long value = stripe.get();
+        if (!stripe.compareAndSet(value, value + x)) {
+            // 有竞争，换到下一个分段，这次直接加上
+            int hash = probe[0];
+            hash ^= hash << 13;
+            hash ^= hash >>> 17;
+            hash ^= hash << 5;
+            probe[0] = hash;
+            stripe.getAndAdd(x);
+        }
+    }
+
+    /**
+     * @return 所有分段的和；有线程同时在加计数时，返回值在调用开始和结束时的真实值之间
+     */
+    public long sum() {
+        long sum = 0;
+        for (ThreadUtils.PaddedAtomicLong stripe : mStripes) {
+            sum += stripe.get();
+        }
+        return sum;
+    }
+
+    /**
+     * 清零，和{@link #sumThenReset()}不同的是清零前正在加的计数可能被丢掉，只在没有并发写入时使用
+     */
+    public void reset() {
+        for (ThreadUtils.PaddedAtomicLong stripe : mStripes) {
+            stripe.set(0);
+        }
+    }
+
+    /**
+     * 取出总数同时清零，每个分段用getAndSet取出，并发加的计数要么算在这次要么算在下次，不会丢失
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (ThreadUtils.PaddedAtomicLong stripe : mStripes) {
+            sum += stripe.getAndSet(0);
+        }
+        return sum;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    /**
+     * 统计速率的计数器，定期取快照并清零，得到每个周期的计数和每秒速率
+     */
+    public static class RateCounter extends StripedCounter {
+
+        /**
+         * 以前所有快照的计数之和
+         */
+        private long mSnapshotTotal;
+        private long mLastCount;
+        private double mLastRate;
+        private long mLastSnapshotNanos = System.nanoTime();
+        private ThreadUtils.BaseTask<Long> mSnapshotTask;
+
+        /**
+         * 取一次快照，得到上次快照到现在的计数，然后重新开始计数
+         *
+         * @return 这个周期的计数
+         */
+        public synchronized long snapshot() {
+            long now = System.nanoTime();
+            long count = sumThenReset();
+            long elapsed = now - mLastSnapshotNanos;
+            mSnapshotTotal += count;
+            mLastCount = count;
+            mLastRate = elapsed > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+            mLastSnapshotNanos = now;
+            return count;
+        }
+
+        /**
+         * @return 上一个周期的计数
+         */
+        public synchronized long getLastCount() {
+            return mLastCount;
+        }
+
+        /**
+         * @return 上一个周期每秒的计数
+         */
+        public synchronized double getLastRate() {
+            return mLastRate;
+        }
+
+        /**
+         * @return 从创建到现在的总计数，包括当前周期还没取快照的部分
+         */
+        public synchronized long getTotal() {
+            return mSnapshotTotal + sum();
+        }
+
+        /**
+         * 在cpu线程池里每隔一段时间取一次快照
+         *
+         * @param periodMillis 周期
+         * @param listener     每次取快照后在主线程回调，可以为null
+         */
+        public synchronized void startSnapshot(@IntRange(from = 1) long periodMillis, final OnSnapshotListener listener) {
+            stopSnapshot();
+            mSnapshotTask = new ThreadUtils.BaseTask<Long>() {
+                @Override
+                public Long doInBackground() {
+                    return snapshot();
+                }
+
+                @Override
+                public void onSuccess(Long result) {
+                    if (listener != null) {
+                        listener.onSnapshot(result, getLastRate());
+                    }
+                }
+
+                @Override
+                public void onCancel() {
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                }
+            };
+            ThreadUtils.executeByCpuAtFixRate(mSnapshotTask, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public synchronized void stopSnapshot() {
+            if (mSnapshotTask != null) {
+                // 快照很快，不需要中断正在执行的那一次
+                mSnapshotTask.cancel(false);
+                mSnapshotTask = null;
+            }
+        }
+
+        @NonNull
+        @Override
+        public synchronized String toString() {
+            return "RateCounter{total=" + getTotal() + ", lastCount=" + mLastCount + ", lastRate=" + mLastRate + "}";
+        }
+    }
+
+    public interface OnSnapshotListener {
+
+        /**
+         * 取到一次快照
+         *
+         * @param count 这个周期的计数
+         * @param rate  这个周期每秒的计数
+         */
+        void onSnapshot(long count, double rate);
+    }
+}
@@ -9,6 +9,16 @@ public class SynchronizedEntity {
 
     private int ticket = 10;
 
+    public SynchronizedEntity() {
+    }
+
+    /**
+     * @param ticket 票数，和{@link TicketDispenser}对比吞吐量时使用
+     */
+    public SynchronizedEntity(int ticket) {
+        this.ticket = ticket;
+    }
+
     /**
      * 同步方法，对象锁
      */
@@ -49,6 +59,53 @@ public class SynchronizedEntity {
         }
     }
 
+    /**
+     * 同步方法卖一张票，不打印，用于对比吞吐量
+     *
+     * @return 是否卖出
+     */
+    public synchronized boolean sellMethod() {
+        if (ticket > 0) {
+            ticket--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 同步块卖一张票
+     *
+     * @return 是否卖出
+     */
+    public boolean sellThis() {
+        synchronized (this) {
+            if (ticket > 0) {
+                ticket--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 类锁卖一张票
+     *
+     * @return 是否卖出
+     */
+    public boolean sellClass() {
+        synchronized (SynchronizedEntity.class) {
+            if (ticket > 0) {
+                ticket--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public synchronized int getTicket() {
+        return ticket;
+    }
+
     /**
      * 同步静态方法，类锁
      */
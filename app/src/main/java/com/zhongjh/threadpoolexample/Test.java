@@ -1,5 +1,7 @@
 package com.zhongjh.threadpoolexample;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * @author zhongjh
  * @date 2021/5/18
@@ -8,8 +10,40 @@ public class Test {
 
     public volatile int inc = 0;
 
+    /**
+     * 下面三种是正确的计数方式，用于和volatile对比
+     */
+    private long syncInc = 0;
+    public final AtomicLong atomicInc = new AtomicLong();
+    public final StripedCounter stripedInc = new StripedCounter();
+
+    /**
+     * volatile不保证自增的原子性，多线程下会丢失计数
+     */
     public void increase() {
         inc++;
     }
 
+    public synchronized void increaseSync() {
+        syncInc++;
+    }
+
+    public synchronized long getSyncInc() {
+        return syncInc;
+    }
+
+    /**
+     * 原子操作，但是所有线程竞争同一个缓存行
+     */
+    public void increaseAtomic() {
+        atomicInc.incrementAndGet();
+    }
+
+    /**
+     * 每个线程加自己的分段，竞争最少，读取总数时用{@link StripedCounter#sum()}
+     */
+    public void increaseStriped() {
+        stripedInc.increment();
+    }
+
 }
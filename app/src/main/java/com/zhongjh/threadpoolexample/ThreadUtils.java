@@ -1,8 +1,10 @@
 package com.zhongjh.threadpoolexample;
 
 
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.CallSuper;
@@ -10,24 +12,52 @@ import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * <pre>
@@ -49,6 +79,97 @@ public final class ThreadUtils {
 
     private static final Map<BaseTask, ExecutorService> TASK_POOL_MAP = new ConcurrentHashMap<>();
 
+    /**
+     * 使用无锁数组队列的线程池类型，value是队列容量
+     */
+    private static final Map<Integer, Integer> TYPE_ARRAY_QUEUE_CAPACITY = new ConcurrentHashMap<>();
+
+    /**
+     * 每个任务类的耗时统计
+     */
+    private static final Map<Class<?>, TaskStats> TASK_STATS = new ConcurrentHashMap<>();
+
+    /**
+     * executeAuto()提交的每个任务类的路由
+     */
+    private static final Map<Class<?>, AutoRoute> AUTO_ROUTES = new ConcurrentHashMap<>();
+
+    /**
+     * 按名称保存的舱壁
+     */
+    private static final Map<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    /**
+     * 按key保存的对冲策略和延迟统计
+     */
+    private static final Map<String, HedgePolicy> HEDGE_POLICIES = new ConcurrentHashMap<>();
+
+    /**
+     * 所有线程池共享的线程预算，默认不限制；存活的线程数；所有线程工厂
+     */
+    private static volatile int sThreadBudget = Integer.MAX_VALUE;
+    private static final AtomicInteger LIVE_THREAD_COUNT = new AtomicInteger();
+    private static final List<UtilsThreadFactory> THREAD_FACTORIES = new CopyOnWriteArrayList<>();
+
+    /**
+     * 自定义的线程优先级后端，null时根据运行环境选择
+     */
+    private static volatile ThreadPriorityBackend sPriorityBackend;
+
+    /**
+     * 内存紧张时空闲线程的存活时间
+     */
+    private static final long PRESSURE_KEEP_ALIVE_MILLIS = 1000;
+    /**
+     * ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW、TRIM_MEMORY_UI_HIDDEN、TRIM_MEMORY_MODERATE
+     */
+    private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    private static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    private static final int TRIM_MEMORY_MODERATE = 60;
+    /**
+     * 是否内存紧张，内存紧张时每个线程池最多排队的任务数，低优先级的任务是取消还是推迟
+     */
+    private static volatile boolean sMemoryPressure;
+    private static volatile int sPressureQueueLimit = 64;
+    private static volatile boolean isCancelLowPriorityOnPressure;
+    /**
+     * 内存紧张状态是否由onTrimMemory进入，回到前台时解除
+     */
+    private static volatile boolean isTrimMemoryPressure;
+    /**
+     * 内存紧张时推迟的低优先级任务，恢复后重新提交
+     */
+    private static final Queue<DeferredTask> DEFERRED_TASKS = new ConcurrentLinkedQueue<>();
+    private static Future<?> sHeapMonitor;
+
+    /**
+     * 排队延迟控制的目标延迟和时间窗口，目标为0表示关闭；过载时快速失败的最高优先级；过载丢弃的任务数
+     */
+    private static volatile long sQueueDelayTargetNanos;
+    private static volatile long sQueueDelayIntervalNanos;
+    private static volatile int sOverloadShedPriority = Thread.NORM_PRIORITY - 1;
+    private static final AtomicLong OVERLOAD_SHED_COUNT = new AtomicLong();
+
+    /**
+     * 是否统计任务的CPU时间和分配内存
+     */
+    private static volatile boolean sTaskStatsEnabled;
+
+    /**
+     * 正在SyncValue.getValue()中阻塞等待的线程
+     */
+    private static final Set<Thread> SYNC_VALUE_WAITERS = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    /**
+     * 线程池卡死检测
+     */
+    private static StallWatchdog sStallWatchdog;
+
+    /**
+     * 是否开启了卡死检测，开启后线程池才记录每个线程正在执行的任务
+     */
+    private static volatile boolean sStallWatchdogEnabled;
+
     /**
      * 返回的是可用的计算资源，而不是CPU物理核心数
      */
@@ -56,7 +177,12 @@ public final class ThreadUtils {
     /**
      * 可以实现循环或延迟任务的线程池
      */
-    private static final ScheduledExecutorService mExecutorService = new ScheduledThreadPoolExecutor(1, (ThreadFactory) Thread::new);
+    private static final ScheduledThreadPoolExecutor mExecutorService = new ScheduledThreadPoolExecutor(1, (ThreadFactory) Thread::new);
+
+    static {
+        // 任务取消后立即从定时队列中移除，否则被取消的循环任务会一直留在队列里直到下次触发
+        mExecutorService.setRemoveOnCancelPolicy(true);
+    }
 
     private static final byte TYPE_SINGLE = -1;
     private static final byte TYPE_CACHED = -2;
@@ -351,6 +477,45 @@ public final class ThreadUtils {
         executeAtFixedRate(getPoolByTypeAndPriority(size, priority), baseTask, initialDelay, period, unit);
     }
 
+    /**
+     * Executes the given task in a fixed thread pool with fixed delay.
+     * 在固定线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param size         The size of thread in the pool.
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByFixedWithFixedDelay(@IntRange(from = 1) final int size,
+                                                        final BaseTask<T> baseTask,
+                                                        long initialDelay,
+                                                        final long delay,
+                                                        final TimeUnit unit) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(size), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given task in a fixed thread pool with fixed delay.
+     *
+     * @param size         The size of thread in the pool.
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param priority     The priority of thread in the poll.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByFixedWithFixedDelay(@IntRange(from = 1) final int size,
+                                                        final BaseTask<T> baseTask,
+                                                        long initialDelay,
+                                                        final long delay,
+                                                        final TimeUnit unit,
+                                                        @IntRange(from = 1, to = 10) final int priority) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(size, priority), baseTask, initialDelay, delay, unit);
+    }
+
     /**
      * Executes the given task in a single thread pool.
      *
@@ -469,6 +634,41 @@ public final class ThreadUtils {
         );
     }
 
+    /**
+     * Executes the given task in a single thread pool with fixed delay.
+     * 在单线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeBySingleWithFixedDelay(final BaseTask<T> baseTask,
+                                                         long initialDelay,
+                                                         final long delay,
+                                                         final TimeUnit unit) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_SINGLE), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given task in a single thread pool with fixed delay.
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param priority     The priority of thread in the poll.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeBySingleWithFixedDelay(final BaseTask<T> baseTask,
+                                                         long initialDelay,
+                                                         final long delay,
+                                                         final TimeUnit unit,
+                                                         @IntRange(from = 1, to = 10) final int priority) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_SINGLE, priority), baseTask, initialDelay, delay, unit);
+    }
+
     /**
      * Executes the given task in a cached thread pool.
      * 在缓存的线程池中执行给定的任务。
@@ -588,6 +788,41 @@ public final class ThreadUtils {
         );
     }
 
+    /**
+     * Executes the given task in a cached thread pool with fixed delay.
+     * 在缓存线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByCachedWithFixedDelay(final BaseTask<T> baseTask,
+                                                         long initialDelay,
+                                                         final long delay,
+                                                         final TimeUnit unit) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_CACHED), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given task in a cached thread pool with fixed delay.
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param priority     The priority of thread in the poll.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByCachedWithFixedDelay(final BaseTask<T> baseTask,
+                                                         long initialDelay,
+                                                         final long delay,
+                                                         final TimeUnit unit,
+                                                         @IntRange(from = 1, to = 10) final int priority) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_CACHED, priority), baseTask, initialDelay, delay, unit);
+    }
+
     /**
      * 在IO线程池中执行给定的任务。
      *
@@ -707,6 +942,41 @@ public final class ThreadUtils {
         );
     }
 
+    /**
+     * Executes the given task in an IO thread pool with fixed delay.
+     * 在IO线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByIoWithFixedDelay(final BaseTask<T> baseTask,
+                                                     long initialDelay,
+                                                     final long delay,
+                                                     final TimeUnit unit) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_IO), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given task in an IO thread pool with fixed delay.
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param priority     The priority of thread in the poll.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByIoWithFixedDelay(final BaseTask<T> baseTask,
+                                                     long initialDelay,
+                                                     final long delay,
+                                                     final TimeUnit unit,
+                                                     @IntRange(from = 1, to = 10) final int priority) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_IO, priority), baseTask, initialDelay, delay, unit);
+    }
+
     /**
      * Executes the given task in a cpu thread pool.
      *
@@ -825,6 +1095,95 @@ public final class ThreadUtils {
         );
     }
 
+    /**
+     * Executes the given task in a cpu thread pool with fixed delay.
+     * 在CPU线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByCpuWithFixedDelay(final BaseTask<T> baseTask,
+                                                      long initialDelay,
+                                                      final long delay,
+                                                      final TimeUnit unit) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_CPU), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given task in a cpu thread pool with fixed delay.
+     *
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param priority     The priority of thread in the poll.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByCpuWithFixedDelay(final BaseTask<T> baseTask,
+                                                      long initialDelay,
+                                                      final long delay,
+                                                      final TimeUnit unit,
+                                                      @IntRange(from = 1, to = 10) final int priority) {
+        executeWithFixedDelay(getPoolByTypeAndPriority(TYPE_CPU, priority), baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * 根据同一个任务类以往执行时CPU时间占墙上时间的比例，自动选择IO线程池或CPU线程池
+     * 还没有统计时先放到IO线程池，阻塞的任务放错到CPU线程池会占满有限的线程；
+     * 每次执行都会统计，任务的行为变了之后路由也会跟着变，路由情况通过{@link #getAutoRoutes()}查看
+     *
+     * @param baseTask The task to execute.
+     * @param <T>      The type of the task's result.
+     */
+    public static <T> void executeAuto(final BaseTask<T> baseTask) {
+        executeAuto(baseTask, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * 自动选择IO线程池或CPU线程池执行
+     *
+     * @param baseTask The task to execute.
+     * @param priority The priority of thread in the poll.
+     * @param <T>      The type of the task's result.
+     */
+    public static <T> void executeAuto(final BaseTask<T> baseTask,
+                                       @IntRange(from = 1, to = 10) final int priority) {
+        AutoRoute autoRoute = getOrCreateAutoRoute(baseTask.getClass());
+        baseTask.mAutoRoute = autoRoute;
+        execute(getPoolByTypeAndPriority(autoRoute.route() ? TYPE_CPU : TYPE_IO, priority), baseTask);
+    }
+
+    /**
+     * 获取executeAuto()提交过的每个任务类的路由情况
+     *
+     * @return 任务类和路由
+     */
+    public static Map<Class<?>, AutoRoute> getAutoRoutes() {
+        return new HashMap<>(AUTO_ROUTES);
+    }
+
+    /**
+     * 清空路由统计，之后的任务重新从IO线程池开始统计
+     */
+    public static void clearAutoRoutes() {
+        AUTO_ROUTES.clear();
+    }
+
+    private static AutoRoute getOrCreateAutoRoute(final Class<?> taskClass) {
+        AutoRoute autoRoute = AUTO_ROUTES.get(taskClass);
+        if (autoRoute == null) {
+            AutoRoute newAutoRoute = new AutoRoute(taskClass);
+            autoRoute = AUTO_ROUTES.putIfAbsent(taskClass, newAutoRoute);
+            if (autoRoute == null) {
+                autoRoute = newAutoRoute;
+            }
+        }
+        return autoRoute;
+    }
+
     /**
      * Executes the given task in a custom thread pool.
      *
@@ -886,6 +1245,139 @@ public final class ThreadUtils {
         executeAtFixedRate(pool, baseTask, initialDelay, period, unit);
     }
 
+    /**
+     * Executes the given task in a custom thread pool with fixed delay.
+     * 在自定义线程池中执行给定的任务，上一次执行完成后再等待delay开始下一次。
+     *
+     * @param pool         The custom thread pool.
+     * @param baseTask     The task to execute.
+     * @param initialDelay The time to delay first execution.
+     * @param delay        The delay between the end of one execution and the start of the next.
+     * @param unit         The time unit of the initialDelay and delay parameters.
+     * @param <T>          The type of the task's result.
+     */
+    public static <T> void executeByCustomWithFixedDelay(final ExecutorService pool,
+                                                         final BaseTask<T> baseTask,
+                                                         long initialDelay,
+                                                         final long delay,
+                                                         final TimeUnit unit) {
+        executeWithFixedDelay(pool, baseTask, initialDelay, delay, unit);
+    }
+
+    /**
+     * Executes the given tasks in a fixed thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param size      The size of thread in the pool.
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllByFixed(@IntRange(from = 1) final int size,
+                                         final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(getPoolByTypeAndPriority(size), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a fixed thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param size      The size of thread in the pool.
+     * @param baseTasks The tasks to execute.
+     * @param priority  The priority of thread in the poll.
+     */
+    public static void executeAllByFixed(@IntRange(from = 1) final int size,
+                                         final Collection<? extends BaseTask<?>> baseTasks,
+                                         @IntRange(from = 1, to = 10) final int priority) {
+        executeAll(getPoolByTypeAndPriority(size, priority), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a single thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllBySingle(final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(getPoolByTypeAndPriority(TYPE_SINGLE), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a single thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     * @param priority  The priority of thread in the poll.
+     */
+    public static void executeAllBySingle(final Collection<? extends BaseTask<?>> baseTasks,
+                                          @IntRange(from = 1, to = 10) final int priority) {
+        executeAll(getPoolByTypeAndPriority(TYPE_SINGLE, priority), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a cached thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllByCached(final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(getPoolByTypeAndPriority(TYPE_CACHED), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a cached thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     * @param priority  The priority of thread in the poll.
+     */
+    public static void executeAllByCached(final Collection<? extends BaseTask<?>> baseTasks,
+                                          @IntRange(from = 1, to = 10) final int priority) {
+        executeAll(getPoolByTypeAndPriority(TYPE_CACHED, priority), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in an IO thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllByIo(final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(getPoolByTypeAndPriority(TYPE_IO), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in an IO thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     * @param priority  The priority of thread in the poll.
+     */
+    public static void executeAllByIo(final Collection<? extends BaseTask<?>> baseTasks,
+                                      @IntRange(from = 1, to = 10) final int priority) {
+        executeAll(getPoolByTypeAndPriority(TYPE_IO, priority), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a cpu thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllByCpu(final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(getPoolByTypeAndPriority(TYPE_CPU), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a cpu thread pool, registering, enqueuing and waking up workers in bulk.
+     *
+     * @param baseTasks The tasks to execute.
+     * @param priority  The priority of thread in the poll.
+     */
+    public static void executeAllByCpu(final Collection<? extends BaseTask<?>> baseTasks,
+                                       @IntRange(from = 1, to = 10) final int priority) {
+        executeAll(getPoolByTypeAndPriority(TYPE_CPU, priority), baseTasks);
+    }
+
+    /**
+     * Executes the given tasks in a custom thread pool.
+     *
+     * @param pool      The custom thread pool.
+     * @param baseTasks The tasks to execute.
+     */
+    public static void executeAllByCustom(final ExecutorService pool, final Collection<? extends BaseTask<?>> baseTasks) {
+        executeAll(pool, baseTasks);
+    }
+
     /**
      * Cancel the given task.
      *
@@ -938,7 +1430,10 @@ public final class ThreadUtils {
      * @param executorService The pool.
      */
     public static void cancel(ExecutorService executorService) {
-        if (executorService instanceof ThreadPoolExecutor4Util) {
+        if (executorService instanceof ThreadPoolExecutor4Util
+                || executorService instanceof SerialExecutor4Util
+                || executorService instanceof PriorityView4Util
+                || executorService instanceof Bulkhead) {
             for (Map.Entry<BaseTask, ExecutorService> taskTaskInfoEntry : TASK_POOL_MAP.entrySet()) {
                 if (taskTaskInfoEntry.getValue() == executorService) {
                     cancel(taskTaskInfoEntry.getKey());
@@ -950,595 +1445,5315 @@ public final class ThreadUtils {
     }
 
     /**
-     * Set the deliver.
+     * 同时执行所有任务，全部成功后回调所有结果，按任务顺序排列
+     * 任何一个任务失败或者被取消，马上取消其他任务并回调失败
      *
-     * @param deliver The deliver.
+     * @param pool     线程池
+     * @param tasks    任务，不能是已经执行过的任务
+     * @param listener 回调
+     * @return 任务组，可以用来取消所有任务
      */
-    public static void setDeliver(final Executor deliver) {
-        sDeliver = deliver;
-    }
-
-    private static <T> void execute(final ExecutorService pool, final BaseTask<T> baseTask) {
-        execute(pool, baseTask, 0, 0, null);
+    public static <T> TaskScope<List<T>> invokeAll(final ExecutorService pool,
+                                                   final List<? extends BaseTask<T>> tasks,
+                                                   final OnScopeListener<List<T>> listener) {
+        return invokeAll(pool, tasks, 0, null, listener);
     }
 
-    private static <T> void executeWithDelay(final ExecutorService pool,
-                                             final BaseTask<T> baseTask,
-                                             final long delay,
-                                             final TimeUnit unit) {
-        execute(pool, baseTask, delay, 0, unit);
+    /**
+     * 同时执行所有任务，全部成功后回调所有结果，按任务顺序排列
+     * 任何一个任务失败或者被取消，马上取消其他任务并回调失败；超过timeout还没有全部完成，取消所有任务并回调TimeoutException
+     * 线程池已经关闭时任务按被拒绝处理，回调RejectedExecutionException
+     *
+     * @param pool     线程池
+     * @param tasks    任务，不能是已经执行过的任务
+     * @param timeout  整组任务的期限，0表示不限时
+     * @param unit     期限的单位
+     * @param listener 回调
+     * @return 任务组，可以用来取消所有任务
+     */
+    public static <T> TaskScope<List<T>> invokeAll(final ExecutorService pool,
+                                                   final List<? extends BaseTask<T>> tasks,
+                                                   final long timeout,
+                                                   final TimeUnit unit,
+                                                   final OnScopeListener<List<T>> listener) {
+        TaskScope<List<T>> scope = new TaskScope<>(TaskScope.MODE_ALL, tasks, listener);
+        scope.fork(pool, timeout, unit);
+        return scope;
     }
 
-    private static <T> void executeAtFixedRate(final ExecutorService pool,
-                                               final BaseTask<T> baseTask,
-                                               long delay,
-                                               final long period,
-                                               final TimeUnit unit) {
-        execute(pool, baseTask, delay, period, unit);
+    /**
+     * 同时执行所有任务，回调第一个成功的结果，并马上取消其他任务
+     * 所有任务都失败时回调最后一个失败的异常，其他异常通过getSuppressed()获取
+     *
+     * @param pool     线程池
+     * @param tasks    任务，不能是已经执行过的任务
+     * @param listener 回调
+     * @return 任务组，可以用来取消所有任务
+     */
+    public static <T> TaskScope<T> invokeAny(final ExecutorService pool,
+                                             final List<? extends BaseTask<T>> tasks,
+                                             final OnScopeListener<T> listener) {
+        return invokeAny(pool, tasks, 0, null, listener);
     }
 
     /**
+     * 同时执行所有任务，回调第一个成功的结果，并马上取消其他任务
+     * 所有任务都失败时回调最后一个失败的异常；超过timeout还没有任务成功，取消所有任务并回调TimeoutException
+     * 线程池已经关闭时任务按被拒绝处理，都被拒绝时回调RejectedExecutionException
      *
-     * @param pool ExecutorService 线程池
+     * @param pool     线程池
+     * @param tasks    任务，不能是已经执行过的任务
+     * @param timeout  整组任务的期限，0表示不限时
+     * @param unit     期限的单位
+     * @param listener 回调
+     * @return 任务组，可以用来取消所有任务
      */
+    public static <T> TaskScope<T> invokeAny(final ExecutorService pool,
+                                             final List<? extends BaseTask<T>> tasks,
+                                             final long timeout,
+                                             final TimeUnit unit,
+                                             final OnScopeListener<T> listener) {
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("invokeAny needs at least one task.");
+        }
+        TaskScope<T> scope = new TaskScope<>(TaskScope.MODE_ANY, tasks, listener);
+        scope.fork(pool, timeout, unit);
+        return scope;
+    }
+
+    /**
+     * 获取名称为name的舱壁，不存在时创建，超过队列上限时拒绝任务，BaseTask会回调onFail
+     *
+     * @see #getBulkhead(String, ExecutorService, int, int, int)
+     */
+    public static Bulkhead getBulkhead(@NonNull final String name,
+                                       @NonNull final ExecutorService parent,
+                                       @IntRange(from = 1) final int maxConcurrent,
+                                       @IntRange(from = 0) final int maxQueued) {
+        return getBulkhead(name, parent, maxConcurrent, maxQueued, Bulkhead.REJECT_ABORT);
+    }
+
+    /**
+     * 获取名称为name的舱壁，不存在时创建
+     * 舱壁借用parent的线程执行任务，但同时最多只有maxConcurrent个任务在parent中执行，其他的在舱壁自己的队列中等待，
+     * 这样不相关的模块(图片、同步、统计)可以共用一个IO线程池，又不会因为一个模块卡住而占满所有线程
+     * 已经存在时直接返回，参数以第一次创建时为准
+     *
+     * @param name          名称
+     * @param parent        借用线程的线程池
+     * @param maxConcurrent 最多同时执行的任务数
+     * @param maxQueued     最多排队的任务数
+     * @param rejectPolicy  超过排队上限时的处理，{@link Bulkhead#REJECT_ABORT}、{@link Bulkhead#REJECT_CALLER_RUNS}、
+     *                      {@link Bulkhead#REJECT_DISCARD_OLDEST}
+     * @return 舱壁
+     */
+    public static Bulkhead getBulkhead(@NonNull final String name,
+                                       @NonNull final ExecutorService parent,
+                                       @IntRange(from = 1) final int maxConcurrent,
+                                       @IntRange(from = 0) final int maxQueued,
+                                       final int rejectPolicy) {
+        Bulkhead bulkhead = BULKHEADS.get(name);
+        if (bulkhead == null || bulkhead.isShutdown()) {
+            synchronized (BULKHEADS) {
+                bulkhead = BULKHEADS.get(name);
+                if (bulkhead == null || bulkhead.isShutdown()) {
+                    bulkhead = new Bulkhead(name, parent, maxConcurrent, maxQueued, rejectPolicy);
+                    BULKHEADS.put(name, bulkhead);
+                }
+            }
+        }
+        return bulkhead;
+    }
+
+    /**
+     * @return 所有舱壁，可以获取每个舱壁的执行、排队、完成和拒绝数
+     */
+    public static Map<String, Bulkhead> getBulkheads() {
+        return new HashMap<>(BULKHEADS);
+    }
+
+    /**
+     * 设置所有线程池共享的线程预算，ThreadUtils创建的线程池新建线程时从预算中扣除，线程退出时归还
+     * 预算用完时线程池不再新建线程，任务进入队列等待已有的线程，每个线程池总能保留至少一个线程，不会饿死
+     * 只影响之后新建的线程，已经存在的线程不会被回收
+     *
+     * @param maxThreads 最多的线程数，Integer.MAX_VALUE表示不限制
+     */
+    public static void setThreadBudget(@IntRange(from = 1) final int maxThreads) {
+        sThreadBudget = maxThreads;
+    }
+
+    public static int getThreadBudget() {
+        return sThreadBudget;
+    }
+
+    /**
+     * @return 线程预算和每个线程池的线程使用情况
+     */
+    public static ThreadUsageReport getThreadUsage() {
+        return new ThreadUsageReport(sThreadBudget, LIVE_THREAD_COUNT.get(), THREAD_FACTORIES);
+    }
+
+    /**
+     * 转发Application/Activity的onTrimMemory，前台的RUNNING_LOW、RUNNING_CRITICAL和后台的MODERATE、COMPLETE时进入内存紧张状态
+     * 每次退到后台都会收到的UI_HIDDEN、BACKGROUND只说明界面不可见，不是内存紧张
+     * 系统不会通知内存恢复，回到前台时调用{@link #onForeground()}解除
+     *
+     * @param level ComponentCallbacks2的TRIM_MEMORY_*
+     */
+    public static void onTrimMemory(final int level) {
+        boolean isRunningLow = level >= TRIM_MEMORY_RUNNING_LOW && level < TRIM_MEMORY_UI_HIDDEN;
+        if (isRunningLow || level >= TRIM_MEMORY_MODERATE) {
+            synchronized (TYPE_PRIORITY_POOLS) {
+                if (!sMemoryPressure) {
+                    isTrimMemoryPressure = true;
+                    setMemoryPressure(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在Activity的onStart中调用，解除由{@link #onTrimMemory(int)}进入的内存紧张状态，
+     * 还原线程池的配置并重新提交推迟的任务；手动或者堆内存监控进入的内存紧张状态不受影响
+     */
+    public static void onForeground() {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            if (!isTrimMemoryPressure) {
+                return;
+            }
+            isTrimMemoryPressure = false;
+        }
+        setMemoryPressure(false);
+    }
+
+    /**
+     * 进入或解除内存紧张状态
+     * 内存紧张时：所有线程池的空闲线程(包括核心线程)1秒后退出；每个线程池最多排队{@link #setMemoryPressureQueueLimit(int)}个任务，
+     * 超过的拒绝(BaseTask回调onFail)；优先级低于Thread.NORM_PRIORITY的线程池，排队的和新提交的任务推迟到恢复后执行，或者直接取消
+     * 解除后还原线程存活时间，推迟的任务重新提交，核心线程在之后提交任务时重新创建
+     *
+     * @param pressure 是否内存紧张
+     */
+    public static void setMemoryPressure(final boolean pressure) {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            if (sMemoryPressure == pressure) {
+                return;
+            }
+            sMemoryPressure = pressure;
+            if (!pressure) {
+                isTrimMemoryPressure = false;
+            }
+            Log.i(TAG, "Memory pressure: " + pressure);
+            for (ExecutorService pool : getAllPools()) {
+                if (pool instanceof ThreadPoolExecutor4Util) {
+                    if (pressure) {
+                        ((ThreadPoolExecutor4Util) pool).enterMemoryPressure();
+                    } else {
+                        ((ThreadPoolExecutor4Util) pool).exitMemoryPressure();
+                    }
+                } else if (pool instanceof SerialExecutor4Util && pressure) {
+                    // 唤醒挂起的执行线程，让它按内存紧张的存活时间退出
+                    Thread worker = ((SerialExecutor4Util) pool).mWorker;
+                    if (worker != null) {
+                        LockSupport.unpark(worker);
+                    }
+                }
+            }
+        }
+        if (!pressure) {
+            resubmitDeferredTasks();
+        }
+    }
+
+    public static boolean isMemoryPressure() {
+        return sMemoryPressure;
+    }
+
+    /**
+     * @param limit 内存紧张时每个线程池最多排队的任务数，默认64
+     */
+    public static void setMemoryPressureQueueLimit(@IntRange(from = 0) final int limit) {
+        sPressureQueueLimit = limit;
+    }
+
+    /**
+     * @param cancel 内存紧张时低优先级线程池的任务是取消(true)还是推迟到恢复后执行(false，默认)
+     */
+    public static void setCancelLowPriorityOnPressure(final boolean cancel) {
+        isCancelLowPriorityOnPressure = cancel;
+    }
+
+    /**
+     * 按堆内存使用率自动进入和解除内存紧张状态，用于JVM或者没有onTrimMemory的场景
+     * 已用堆内存/最大堆内存 达到enterRatio时进入，低于exitRatio时解除
+     *
+     * @param enterRatio     进入的使用率，例如0.85
+     * @param exitRatio      解除的使用率，例如0.7，小于enterRatio避免来回切换
+     * @param intervalMillis 检查间隔
+     */
+    public static void startHeapPressureMonitor(final double enterRatio, final double exitRatio,
+                                                @IntRange(from = 1) final long intervalMillis) {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            stopHeapPressureMonitor();
+            sHeapMonitor = mExecutorService.scheduleWithFixedDelay(() -> {
+                Runtime runtime = Runtime.getRuntime();
+                double used = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+                if (!sMemoryPressure && used >= enterRatio) {
+                    setMemoryPressure(true);
+                } else if (sMemoryPressure && used < exitRatio) {
+                    setMemoryPressure(false);
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static void stopHeapPressureMonitor() {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            if (sHeapMonitor != null) {
+                sHeapMonitor.cancel(false);
+                sHeapMonitor = null;
+            }
+        }
+    }
+
+    /**
+     * 开启排队延迟控制，参考CoDel：统计每个任务从提交到开始执行的排队时间，
+     * 一个时间窗口内的排队时间都超过目标时认为线程池过载(窗口内的最小值超过目标)，
+     * 过载期间新提交的、低于普通优先级的任务直接失败，BaseTask回调onFail({@link OverloadException})，其他任务抛出该异常；
+     * 普通及以上优先级的任务照常排队，丢弃低优先级的任务后它们的排队时间就会下降；
+     * 排队时间回到目标以下或者队列排空后恢复
+     * 容量限制挡不住一直排着的长队列，这里限制的是排队时间
+     * 只对固定、缓存、IO、CPU线程池(包括它们的优先级视图)生效，单线程池(executeBySingle)不统计排队时间也不会丢弃任务
+     *
+     * @param targetMillis   目标排队时间
+     * @param intervalMillis 时间窗口，应该比大部分任务的执行时间长
+     */
+    public static void setQueueDelayControl(@IntRange(from = 1) final long targetMillis,
+                                            @IntRange(from = 1) final long intervalMillis) {
+        setQueueDelayControl(targetMillis, intervalMillis, Thread.NORM_PRIORITY - 1);
+    }
+
+    /**
+     * 开启排队延迟控制
+     *
+     * @param targetMillis   目标排队时间
+     * @param intervalMillis 时间窗口
+     * @param shedPriority   过载时，线程池(或优先级视图)的优先级不高于它的任务快速失败，默认Thread.NORM_PRIORITY - 1
+     */
+    public static void setQueueDelayControl(@IntRange(from = 1) final long targetMillis,
+                                            @IntRange(from = 1) final long intervalMillis,
+                                            @IntRange(from = 1, to = 10) final int shedPriority) {
+        sQueueDelayIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        sOverloadShedPriority = shedPriority;
+        sQueueDelayTargetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+    }
+
+    /**
+     * 关闭排队延迟控制，所有线程池都不再因为过载丢弃任务
+     */
+    public static void disableQueueDelayControl() {
+        sQueueDelayTargetNanos = 0;
+    }
+
+    /**
+     * @param pool 线程池
+     * @return 线程池当前是否过载，没有开启排队延迟控制或者不是ThreadUtils的线程池时返回false
+     */
+    public static boolean isOverloaded(final ExecutorService pool) {
+        ThreadPoolExecutor4Util executor = pool instanceof PriorityView4Util ? ((PriorityView4Util) pool).mPool
+                : pool instanceof ThreadPoolExecutor4Util ? (ThreadPoolExecutor4Util) pool : null;
+        return executor != null && executor.isOverloaded();
+    }
+
+    /**
+     * @return 开启排队延迟控制以来因为过载快速失败的任务数
+     */
+    public static long getOverloadShedCount() {
+        return OVERLOAD_SHED_COUNT.get();
+    }
+
+    /**
+     * 设置线程优先级后端，之后创建的线程和优先级视图执行的任务通过它调整调度优先级
+     * 默认Android上使用Process.setThreadPriority，Linux的JVM上使用renice，其他环境只调用Thread.setPriority
+     *
+     * @param backend 后端，null表示恢复默认
+     */
+    public static void setThreadPriorityBackend(@Nullable final ThreadPriorityBackend backend) {
+        sPriorityBackend = backend;
+    }
+
+    public static ThreadPriorityBackend getThreadPriorityBackend() {
+        ThreadPriorityBackend backend = sPriorityBackend;
+        return backend != null ? backend : ThreadPriorityBackendHolder.BACKEND;
+    }
+
+    /**
+     * 设置当前线程的优先级，Thread.setPriority只记录优先级，实际的调度优先级由后端调整
+     *
+     * @param priority    1到10
+     * @param isTemporary 之后是否还会改回去，不能改回去的后端只在线程创建时调整
+     */
+    private static void setCurrentThreadPriority(final int priority, final boolean isTemporary) {
+        Thread.currentThread().setPriority(priority);
+        ThreadPriorityBackend backend = getThreadPriorityBackend();
+        if (!isTemporary || backend.isReversible()) {
+            backend.setCurrentThreadPriority(priority);
+        }
+    }
+
+    /**
+     * 获取key对应的对冲策略，不存在时创建默认策略：按p95延迟对冲，最多额外10%的请求
+     *
+     * @param key 同一类请求的key，例如接口名
+     * @return 对冲策略，可以修改参数和获取统计
+     */
+    public static HedgePolicy getHedgePolicy(@NonNull final String key) {
+        HedgePolicy policy = HEDGE_POLICIES.get(key);
+        if (policy == null) {
+            HedgePolicy newPolicy = new HedgePolicy(key);
+            policy = HEDGE_POLICIES.putIfAbsent(key, newPolicy);
+            if (policy == null) {
+                policy = newPolicy;
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * 对冲执行幂等的请求，用来降低长尾延迟
+     * 先执行一次callable，超过key对应策略的对冲延迟还没完成，并且对冲预算允许时，再执行一次，
+     * 回调先成功的结果并取消另一个；两次都失败时回调失败
+     * callable必须是幂等的，并且要响应中断，输掉的一方会被中断
+     *
+     * @param pool     线程池
+     * @param key      同一类请求的key，见{@link #getHedgePolicy(String)}
+     * @param callable 请求
+     * @param listener 回调
+     * @return 任务组，可以用来取消请求
+     */
+    public static <T> TaskScope<T> executeHedged(final ExecutorService pool,
+                                                 @NonNull final String key,
+                                                 @NonNull final Callable<T> callable,
+                                                 final OnScopeListener<T> listener) {
+        final HedgePolicy policy = getHedgePolicy(key);
+        final HedgedTask<T> primary = new HedgedTask<>(callable, policy, null);
+        final BaseTask<T> hedge = new HedgedTask<>(callable, policy, primary);
+        final TaskScope<T> scope = new TaskScope<>(TaskScope.MODE_ANY, Arrays.asList(primary, hedge), listener);
+        scope.attach();
+        policy.onRequest();
+        execute(pool, primary);
+        hedge.setScheduledFuture(mExecutorService.schedule(() -> {
+            if (primary.isDone() || scope.isDone() || !policy.tryAcquireHedge()) {
+                // 已经有结果或者预算不足，不对冲
+                scope.skip(1);
+                return;
+            }
+            execute(pool, hedge);
+        }, policy.getHedgeDelayMillis(), TimeUnit.MILLISECONDS));
+        return scope;
+    }
+
+    /**
+     * 固定线程池使用无锁数组队列代替LinkedBlockingQueue，需要在第一次获取该线程池之前调用
+     *
+     * @param size     The size of thread in the fixed thread pool.
+     * @param capacity 队列容量，会向上取整为2的幂
+     */
+    public static void setFixedPoolArrayQueue(@IntRange(from = 1) final int size,
+                                              @IntRange(from = 1) final int capacity) {
+        setArrayQueue(size, capacity);
+    }
+
+    /**
+     * IO线程池使用无锁数组队列代替LinkedBlockingQueue，需要在第一次获取该线程池之前调用
+     *
+     * @param capacity 队列容量，会向上取整为2的幂
+     */
+    public static void setIoPoolArrayQueue(@IntRange(from = 1) final int capacity) {
+        setArrayQueue(TYPE_IO, capacity);
+    }
+
+    /**
+     * CPU线程池使用无锁数组队列代替先加线程再加队列的交接队列，需要在第一次获取该线程池之前调用
+     * 此时核心线程都在忙时任务先进入队列，队列满了才新建非核心线程
+     *
+     * @param capacity 队列容量，会向上取整为2的幂
+     */
+    public static void setCpuPoolArrayQueue(@IntRange(from = 1) final int capacity) {
+        setArrayQueue(TYPE_CPU, capacity);
+    }
+
+    private static void setArrayQueue(final int type, final int capacity) {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            if (TYPE_PRIORITY_POOLS.get(type) != null) {
+                Log.w(TAG, "The pool has been created, array queue only works for pools created later.");
+            }
+            TYPE_ARRAY_QUEUE_CAPACITY.put(type, capacity);
+        }
+    }
+
+    /**
+     * 开启或关闭任务统计，开启后每次执行doInBackground()都会统计墙上时间、线程CPU时间和线程分配的内存，按任务类汇总
+     * CPU时间占墙上时间的比例低的任务大部分时间在阻塞，适合IO线程池；比例高的适合CPU线程池
+     * JVM上通过ThreadMXBean获取；Android上CPU时间通过Debug.threadCpuTimeNanos()获取，
+     * 分配内存需要Debug.startAllocCounting()，会拖慢所有内存分配，所以只在调试时统计
+     *
+     * @param enabled 是否开启
+     */
+    public static void setTaskStatsEnabled(final boolean enabled) {
+        ThreadMeterHolder.METER.setEnabled(enabled);
+        sTaskStatsEnabled = enabled;
+    }
+
+    /**
+     * 获取每个任务类的统计，需要先调用{@link #setTaskStatsEnabled(boolean)}开启
+     *
+     * @return 任务类和统计
+     */
+    public static Map<Class<?>, TaskStats> getTaskStats() {
+        return new HashMap<>(TASK_STATS);
+    }
+
+    /**
+     * 清空任务统计
+     */
+    public static void clearTaskStats() {
+        TASK_STATS.clear();
+    }
+
+    private static TaskStats getOrCreateTaskStats(final Class<?> taskClass) {
+        TaskStats taskStats = TASK_STATS.get(taskClass);
+        if (taskStats == null) {
+            TaskStats newTaskStats = new TaskStats(taskClass);
+            taskStats = TASK_STATS.putIfAbsent(taskClass, newTaskStats);
+            if (taskStats == null) {
+                taskStats = newTaskStats;
+            }
+        }
+        return taskStats;
+    }
+
+    /**
+     * 开启线程池卡死检测
+     * 每隔intervalMillis检查一次ThreadUtils创建的线程池，如果队列里有任务但是一个任务都没执行完，认为线程池卡死了，
+     * 报告每个线程正在执行的任务类和线程堆栈，并标记出阻塞在SyncValue.getValue()或者等待自己线程池任务的线程
+     * 常见的原因是single、fixed线程池的任务里同步等待提交到同一个线程池的任务
+     *
+     * @param intervalMillis 检查间隔，毫秒
+     * @param compensate     卡死时是否临时增加一个线程，恢复后还原，single线程池为了保证顺序不会增加
+     * @param listener       卡死的回调，在检测线程中回调，为null时只打印日志
+     */
+    public static void startStallWatchdog(@IntRange(from = 1) final long intervalMillis,
+                                          final boolean compensate,
+                                          @Nullable final OnStallListener listener) {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            stopStallWatchdog();
+            sStallWatchdogEnabled = true;
+            sStallWatchdog = new StallWatchdog(compensate, listener);
+            sStallWatchdog.mFuture = mExecutorService.scheduleWithFixedDelay(sStallWatchdog,
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 关闭线程池卡死检测，临时增加的线程会在检测线程中异步还原
+     */
+    public static void stopStallWatchdog() {
+        synchronized (TYPE_PRIORITY_POOLS) {
+            if (sStallWatchdog == null) {
+                return;
+            }
+            sStallWatchdogEnabled = false;
+            sStallWatchdog.mFuture.cancel(false);
+            // 检测和还原都在mExecutorService唯一的线程中执行，正在进行的检测结束后才还原，不会和补偿交错
+            final List<ExecutorService> pools = getAllPools();
+            mExecutorService.execute(() -> {
+                for (ExecutorService pool : pools) {
+                    if (pool instanceof Pool4Util) {
+                        ((Pool4Util) pool).restoreCompensation();
+                    }
+                }
+            });
+            sStallWatchdog = null;
+        }
+    }
+
+    /**
+     * @return 已经提交还没有结束的任务数，单元测试检查取消后有没有泄漏
+     */
+    static int getRegisteredTaskCount() {
+        return TASK_POOL_MAP.size();
+    }
+
+    /**
+     * @return 定时线程池中等待触发的延迟、循环任务数，单元测试检查取消后定时器有没有清空
+     */
+    static int getScheduledCount() {
+        return mExecutorService.getQueue().size();
+    }
+
+    /**
+     * @return ThreadUtils创建的所有线程池
+     */
+    private static List<ExecutorService> getAllPools() {
+        List<ExecutorService> pools = new ArrayList<>();
+        synchronized (TYPE_PRIORITY_POOLS) {
+            for (Map<Integer, ExecutorService> priorityPools : TYPE_PRIORITY_POOLS.values()) {
+                pools.addAll(priorityPools.values());
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Set the deliver.
+     *
+     * @param deliver The deliver.
+     */
+    public static void setDeliver(final Executor deliver) {
+        sDeliver = deliver;
+    }
+
+    private static <T> void execute(final ExecutorService pool, final BaseTask<T> baseTask) {
+        execute(pool, baseTask, 0, 0, null);
+    }
+
+    /**
+     * 批量提交：一次加锁登记所有任务，再按线程池类型批量入队，避免每个任务都加锁、打印日志、获取线程数和唤醒线程
+     */
+    private static void executeAll(final ExecutorService pool, final Collection<? extends BaseTask<?>> baseTasks) {
+        if (baseTasks == null || baseTasks.isEmpty()) {
+            return;
+        }
+        List<Runnable> commands = new ArrayList<>(baseTasks.size());
+        synchronized (TASK_POOL_MAP) {
+            for (BaseTask<?> baseTask : baseTasks) {
+                if (baseTask == null) {
+                    continue;
+                }
+                if (TASK_POOL_MAP.get(baseTask) != null) {
+                    Log.e("ThreadUtils", "Task can only be executed once.");
+                    continue;
+                }
+                TASK_POOL_MAP.put(baseTask, pool);
+                commands.add(baseTask);
+            }
+        }
+        if (pool instanceof ThreadPoolExecutor4Util) {
+            ((ThreadPoolExecutor4Util) pool).executeAll(commands);
+        } else if (pool instanceof SerialExecutor4Util) {
+            ((SerialExecutor4Util) pool).executeAll(commands);
+        } else if (pool instanceof PriorityView4Util) {
+            ((PriorityView4Util) pool).executeAll(commands);
+        } else {
+            for (Runnable command : commands) {
+                pool.execute(command);
+            }
+        }
+    }
+
+    private static <T> void executeWithDelay(final ExecutorService pool,
+                                             final BaseTask<T> baseTask,
+                                             final long delay,
+                                             final TimeUnit unit) {
+        execute(pool, baseTask, delay, 0, unit);
+    }
+
+    private static <T> void executeAtFixedRate(final ExecutorService pool,
+                                               final BaseTask<T> baseTask,
+                                               long delay,
+                                               final long period,
+                                               final TimeUnit unit) {
+        execute(pool, baseTask, delay, period, unit, false);
+    }
+
+    private static <T> void executeWithFixedDelay(final ExecutorService pool,
+                                                  final BaseTask<T> baseTask,
+                                                  long initialDelay,
+                                                  final long delay,
+                                                  final TimeUnit unit) {
+        execute(pool, baseTask, initialDelay, delay, unit, true);
+    }
+
     private static <T> void execute(final ExecutorService pool, final BaseTask<T> baseTask,
                                     long delay, final long period, final TimeUnit unit) {
+        execute(pool, baseTask, delay, period, unit, false);
+    }
+
+    /**
+     *
+     * @param pool ExecutorService 线程池
+     * @param isFixedDelay 循环任务是否在上一次执行完成后再等待period，否则按固定速率
+     */
+    private static <T> void execute(final ExecutorService pool, final BaseTask<T> baseTask,
+                                    long delay, final long period, final TimeUnit unit,
+                                    final boolean isFixedDelay) {
         synchronized (TASK_POOL_MAP) {
             if (TASK_POOL_MAP.get(baseTask) != null) {
                 Log.e("ThreadUtils", "Task can only be executed once.");
                 return;
             }
-            TASK_POOL_MAP.put(baseTask, pool);
-        }
-        if (period == 0) {
-            if (delay == 0) {
-                pool.execute(baseTask);
+            TASK_POOL_MAP.put(baseTask, pool);
+        }
+        if (period == 0) {
+            if (delay == 0) {
+                pool.execute(baseTask);
+            } else {
+                TimerTask timerTask = new TimerTask() {
+                    @Override
+                    public void run() {
+                        pool.execute(baseTask);
+                    }
+                };
+                baseTask.setScheduledFuture(
+                        mExecutorService.schedule(timerTask, unit.toMillis(delay), TimeUnit.MILLISECONDS)
+                );
+            }
+        } else {
+            baseTask.setSchedule(true, isFixedDelay, unit.toNanos(period));
+            if (isFixedDelay) {
+                // 之后每一次在上一次执行完成后安排
+                baseTask.scheduleNextRun(pool, unit.toNanos(delay));
+                return;
+            }
+            baseTask.mFirstTickNanos = System.nanoTime() + unit.toNanos(delay);
+            TimerTask timerTask = new TimerTask() {
+                @Override
+                public void run() {
+                    pool.execute(baseTask);
+                }
+            };
+            baseTask.setScheduledFuture(
+                    mExecutorService.scheduleAtFixedRate(timerTask, unit.toMillis(delay), unit.toMillis(period), TimeUnit.MILLISECONDS)
+            );
+        }
+    }
+
+    private static ExecutorService getPoolByTypeAndPriority(final int type) {
+        return getPoolByTypeAndPriority(type, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * 根据类型获取线程池
+     * @param type 类型
+     * @param priority 优先级
+     * @return 线程池
+     */
+    private static ExecutorService getPoolByTypeAndPriority(final int type, final int priority) {
+        // 同步map安全，防止线程不安全创建多个 Map线程池
+        synchronized (TYPE_PRIORITY_POOLS) {
+            ExecutorService pool;
+            // 通过类型获取 Map线程池
+            Map<Integer, ExecutorService> priorityPools = TYPE_PRIORITY_POOLS.get(type);
+            if (priorityPools == null) {
+                // 如果没有 Map线程池 则新建一个
+                priorityPools = new ConcurrentHashMap<>();
+                pool = ThreadPoolExecutor4Util.createPool(type, priority);
+                setLowPriority(pool, priority);
+                // 加入线程池
+                priorityPools.put(priority, pool);
+                // 新建后加入 Map线程池
+                TYPE_PRIORITY_POOLS.put(type, priorityPools);
+            } else {
+                // 根据线程池优先级获取线程池
+                pool = priorityPools.get(priority);
+                // 如果没有该线程池，则创建新的线程池
+                if (pool == null) {
+                    // 优先级后端不能在执行任务时切换优先级的话，共用线程会让优先级失效
+                    ThreadPoolExecutor4Util fixedPool = type > 0 && getThreadPriorityBackend().isReversible()
+                            ? getFixedPoolOfSize(priorityPools) : null;
+                    if (fixedPool != null) {
+                        // 相同大小的固定线程池共用一组线程，只在执行任务时切换线程优先级
+                        pool = new PriorityView4Util(fixedPool, priority);
+                    } else {
+                        pool = ThreadPoolExecutor4Util.createPool(type, priority);
+                        setLowPriority(pool, priority);
+                    }
+                    priorityPools.put(priority, pool);
+                }
+            }
+            return pool;
+        }
+    }
+
+    private static void setLowPriority(final ExecutorService pool, final int priority) {
+        boolean isLowPriority = priority < Thread.NORM_PRIORITY;
+        if (pool instanceof ThreadPoolExecutor4Util) {
+            ((ThreadPoolExecutor4Util) pool).isLowPriority = isLowPriority;
+            ((ThreadPoolExecutor4Util) pool).mPriority = priority;
+        } else if (pool instanceof SerialExecutor4Util) {
+            ((SerialExecutor4Util) pool).isLowPriority = isLowPriority;
+        }
+        if (sMemoryPressure && pool instanceof ThreadPoolExecutor4Util) {
+            ((ThreadPoolExecutor4Util) pool).enterMemoryPressure();
+        }
+    }
+
+    /**
+     * 内存紧张时处理新提交的任务：低优先级线程池的任务推迟或取消，其他线程池排队超过上限时拒绝
+     * 拒绝时BaseTask回调onFail，其他任务抛出RejectedExecutionException
+     *
+     * @return 是否已经处理，不需要再提交
+     */
+    private static boolean shedOnPressure(final ExecutorService pool, final Runnable command,
+                                          final boolean isLowPriority, final int queuedCount) {
+        if (isLowPriority) {
+            deferOrCancel(pool, command);
+            return true;
+        }
+        if (queuedCount < sPressureQueueLimit) {
+            return false;
+        }
+        Log.w(TAG, "Memory pressure, the work queue is full, task rejected.");
+        RejectedExecutionException e = new RejectedExecutionException("Memory pressure, the work queue is full.");
+        PriorityView4Util.onDropped(command);
+        Runnable task = PriorityView4Util.unwrap(command);
+        if (!(task instanceof BaseTask)) {
+            throw e;
+        }
+        ((BaseTask<?>) task).reject(e);
+        return true;
+    }
+
+    /**
+     * 开启排队延迟控制并且线程池过载时，快速失败优先级不高于sOverloadShedPriority的任务
+     * 失败时BaseTask回调onFail，其他任务抛出OverloadException
+     *
+     * @param priority 线程池或优先级视图的优先级
+     * @return 是否已经处理，不需要再提交
+     */
+    private static boolean shedOnOverload(final ThreadPoolExecutor4Util pool, final Runnable command,
+                                          final int priority) {
+        if (priority > sOverloadShedPriority || !pool.isOverloaded()) {
+            return false;
+        }
+        OVERLOAD_SHED_COUNT.incrementAndGet();
+        OverloadException e = new OverloadException(TimeUnit.NANOSECONDS.toMillis(pool.mDelayControl.mLastDelayNanos));
+        Runnable task = PriorityView4Util.unwrap(command);
+        if (!(task instanceof BaseTask)) {
+            throw e;
+        }
+        ((BaseTask<?>) task).reject(e);
+        return true;
+    }
+
+    private static void deferOrCancel(final ExecutorService pool, final Runnable command) {
+        Runnable task = PriorityView4Util.unwrap(command);
+        if (isCancelLowPriorityOnPressure) {
+            PriorityView4Util.onDropped(command);
+            if (task instanceof BaseTask) {
+                ((BaseTask<?>) task).cancel(false);
+            } else {
+                Log.w(TAG, "Memory pressure, low priority task dropped.");
+            }
+            return;
+        }
+        DEFERRED_TASKS.offer(new DeferredTask(pool, command));
+        if (!sMemoryPressure) {
+            // 加入之前内存已经恢复了
+            resubmitDeferredTasks();
+        }
+    }
+
+    private static void resubmitDeferredTasks() {
+        DeferredTask deferredTask;
+        while ((deferredTask = DEFERRED_TASKS.poll()) != null) {
+            Runnable task = PriorityView4Util.unwrap(deferredTask.mTask);
+            try {
+                if (deferredTask.mPool.isShutdown()) {
+                    // 关闭的线程池会直接丢弃任务
+                    PriorityView4Util.onDropped(deferredTask.mTask);
+                    throw new RejectedExecutionException("Pool is shut down.");
+                }
+                deferredTask.mPool.execute(deferredTask.mTask);
+            } catch (RejectedExecutionException e) {
+                // 一个任务被拒绝不影响后面的任务
+                Log.e(TAG, "Deferred task rejected: " + e.getMessage());
+                if (task instanceof BaseTask) {
+                    ((BaseTask<?>) task).reject(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 内存紧张时推迟的任务和它的线程池
+     */
+    private static final class DeferredTask {
+
+        private final ExecutorService mPool;
+        private final Runnable mTask;
+
+        DeferredTask(ExecutorService pool, Runnable task) {
+            mPool = pool;
+            mTask = task;
+        }
+    }
+
+    private static ThreadPoolExecutor4Util getFixedPoolOfSize(final Map<Integer, ExecutorService> priorityPools) {
+        for (ExecutorService pool : priorityPools.values()) {
+            if (pool instanceof ThreadPoolExecutor4Util && !pool.isShutdown()) {
+                return (ThreadPoolExecutor4Util) pool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 继承于ThreadPoolExecutor
+     */
+    static final class ThreadPoolExecutor4Util extends ThreadPoolExecutor implements Pool4Util {
+
+        /**
+         * 卡死时最多临时增加的线程数
+         */
+        private static final int MAX_COMPENSATION = 4;
+
+        /**
+         * 创建线程池
+         * @param type 类型
+         * @param priority 优先级
+         * @return 线程池
+         */
+        private static ExecutorService createPool(final int type, final int priority) {
+            switch (type) {
+                case TYPE_SINGLE:
+                    // 只创建一个线程确保 顺序执行的场景，并且只有一个线程在执行
+                    // 只有一个消费者，所以不需要完整的ThreadPoolExecutor，使用单消费者的串行线程池
+                    return new SerialExecutor4Util(new UtilsThreadFactory("single", priority));
+                case TYPE_CACHED:
+                    // 创建 核心线程数为0，线程池最大线程数量为128，非核心线程空闲存活时长为60秒
+                    // 线程数为128个一般用于处理执行时间比较短的任务
+                    // 任务优先直接交给空闲线程，没有空闲线程则新建线程，线程数到达128后才进入队列
+                    return new ThreadPoolExecutor4Util(0, 128,
+                            60L, TimeUnit.SECONDS,
+                            new TransferQueue4Util(),
+                            new UtilsThreadFactory("cached", priority)
+                    );
+                case TYPE_IO:
+                    // 创建 核心线程数为可计算资源*2+1,线程池最大线程数量为可计算资源*2+1，非核心线程空闲存活时长为30秒
+                    // 线程池内部提交的任务优先放入当前线程的本地队列
+                    return new ThreadPoolExecutor4Util(2 * CPU_COUNT + 1, 2 * CPU_COUNT + 1,
+                            30, TimeUnit.SECONDS,
+                            createWorkQueue(type, new LinkedBlockingQueue4Util()),
+                            new UtilsThreadFactory("io", priority),
+                            true
+                    );
+                case TYPE_CPU:
+                    // 创建 核心线程数为可计算资源+1,线程池最大线程数量为可计算资源*2+1，非核心线程空闲存活时长为30秒
+                    // 线程池内部提交的任务优先放入当前线程的本地队列
+                    return new ThreadPoolExecutor4Util(CPU_COUNT + 1, 2 * CPU_COUNT + 1,
+                            30, TimeUnit.SECONDS,
+                            createWorkQueue(type, new TransferQueue4Util()),
+                            new UtilsThreadFactory("cpu", priority),
+                            true
+                    );
+                default:
+                    // 创建 核心线程数、线程池最大数量为自定义的，空闲存活时长为0
+                    return new ThreadPoolExecutor4Util(type, type,
+                            0L, TimeUnit.MILLISECONDS,
+                            createWorkQueue(type, new LinkedBlockingQueue4Util()),
+                            new UtilsThreadFactory("fixed(" + type + ")", priority)
+                    );
+            }
+        }
+
+        /**
+         * 创建任务队列，如果该类型设置了无锁数组队列则使用数组队列
+         * @param type 类型
+         * @param defaultQueue 默认队列
+         * @return 任务队列
+         */
+        private static WorkQueue4Util createWorkQueue(final int type, final WorkQueue4Util defaultQueue) {
+            Integer capacity = TYPE_ARRAY_QUEUE_CAPACITY.get(type);
+            if (capacity == null) {
+                return defaultQueue;
+            }
+            return new ArrayBlockingQueue4Util(capacity);
+        }
+
+        /**
+         * 创建一个原子类
+         */
+        private final AtomicInteger mSubmittedCount = new AtomicInteger();
+
+        private WorkQueue4Util mWorkQueue;
+
+        /**
+         * 当前线程所属线程池的本地队列，只有开启了本地队列的线程池的线程才有
+         */
+        private static final ThreadLocal<LocalQueue4Util> LOCAL_QUEUE = new ThreadLocal<>();
+
+        /**
+         * 本地队列最多存放的任务数，超过后放入共享的任务队列
+         */
+        private static final int LOCAL_QUEUE_LIMIT = 256;
+
+        /**
+         * 是否开启本地队列
+         */
+        private final boolean isLocalQueueEnabled;
+        /**
+         * 所有线程的本地队列，空闲线程从这里窃取任务
+         */
+        private final List<LocalQueue4Util> mLocalQueues = new CopyOnWriteArrayList<>();
+        /**
+         * 存活的线程数
+         */
+        private final AtomicInteger mWorkerCount = new AtomicInteger();
+        /**
+         * 正在执行任务的线程数
+         */
+        private final AtomicInteger mBusyCount = new AtomicInteger();
+        /**
+         * 通知空闲线程窃取任务的信号，本身不做任何事，空闲线程执行完它后在afterExecute中窃取
+         */
+        private final Runnable mStealSignal = () -> {
+        };
+        /**
+         * 执行完的任务数
+         */
+        private final AtomicLong mCompletedCount = new AtomicLong();
+        /**
+         * 每个线程正在执行的任务，开启卡死检测时才记录
+         */
+        private final Map<Thread, Runnable> mRunningTasks = new ConcurrentHashMap<>();
+        /**
+         * 正在执行的任务里又向本线程池提交了任务的线程，开启卡死检测时才记录
+         */
+        private final Set<Thread> mNestedSubmitters = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        /**
+         * 卡死时临时增加的线程数，只在mExecutorService的线程(检测线程)中修改，其他线程可以读取
+         */
+        private volatile int mCompensation;
+        /**
+         * 线程优先级低于普通优先级，内存紧张时推迟它的任务
+         */
+        private volatile boolean isLowPriority;
+        /**
+         * 内存紧张之前的空闲线程存活时间，在TYPE_PRIORITY_POOLS锁内读写
+         */
+        private long mSavedKeepAliveNanos = -1;
+        /**
+         * 线程池的优先级，过载时决定是否快速失败；排队延迟控制
+         */
+        private volatile int mPriority = Thread.NORM_PRIORITY;
+        private final DelayControl4Util mDelayControl = new DelayControl4Util();
+
+        ThreadPoolExecutor4Util(int corePoolSize, int maximumPoolSize,
+                                long keepAliveTime, TimeUnit unit,
+                                WorkQueue4Util workQueue,
+                                ThreadFactory threadFactory) {
+            this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, false);
+        }
+
+        ThreadPoolExecutor4Util(int corePoolSize, int maximumPoolSize,
+                                long keepAliveTime, TimeUnit unit,
+                                WorkQueue4Util workQueue,
+                                ThreadFactory threadFactory,
+                                boolean isLocalQueueEnabled) {
+            super(corePoolSize, maximumPoolSize,
+                    keepAliveTime, unit,
+                    workQueue,
+                    threadFactory
+            );
+            workQueue.setPool(this);
+            mWorkQueue = workQueue;
+            if (threadFactory instanceof UtilsThreadFactory) {
+                ((UtilsThreadFactory) threadFactory).mPool = this;
+            }
+            this.isLocalQueueEnabled = isLocalQueueEnabled;
+            if (isLocalQueueEnabled) {
+                setThreadFactory(new LocalQueueThreadFactory(threadFactory));
+            }
+        }
+
+        private int getSubmittedCount() {
+            return mSubmittedCount.get();
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            mBusyCount.incrementAndGet();
+            beforeRun(t, r);
+            super.beforeExecute(t, r);
+        }
+
+        /**
+         * 任务开始执行前的统计，共享队列和本地队列的任务都要经过
+         */
+        private void beforeRun(Thread t, Runnable r) {
+            if (sQueueDelayTargetNanos > 0) {
+                mDelayControl.onDequeue(r);
+            }
+            if (sStallWatchdogEnabled) {
+                mRunningTasks.put(t, PriorityView4Util.unwrap(r));
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            // 先自减再获取减1后的值
+            mSubmittedCount.decrementAndGet();
+            mCompletedCount.incrementAndGet();
+            super.afterExecute(r, t);
+            if (isLocalQueueEnabled) {
+                runLocalTasks();
+            }
+            clearRunning();
+            mBusyCount.decrementAndGet();
+            if (isLocalQueueEnabled) {
+                // offerLocal()先放入本地队列再看有没有空闲线程，这里先计为空闲再检查一次本地队列，
+                // 两边至少有一边能看到对方：要么提交的线程发出窃取信号，要么这里窃取到任务，
+                // 避免提交的线程阻塞等待它放入本地队列的任务，而其他线程都已经在take()中挂起
+                while (hasLocalTasks()) {
+                    mBusyCount.incrementAndGet();
+                    runLocalTasks();
+                    clearRunning();
+                    mBusyCount.decrementAndGet();
+                }
+            }
+        }
+
+        private void clearRunning() {
+            if (sStallWatchdogEnabled) {
+                Thread current = Thread.currentThread();
+                mRunningTasks.remove(current);
+                mNestedSubmitters.remove(current);
+            }
+        }
+
+        /**
+         * @return 是否有线程的本地队列里还有任务
+         */
+        private boolean hasLocalTasks() {
+            for (LocalQueue4Util localQueue : mLocalQueues) {
+                if (localQueue.size() > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (this.isShutdown()) {
+                PriorityView4Util.onDropped(command);
+                return;
+            }
+            if (sMemoryPressure && shedOnPressure(this, command, isLowPriority,
+                    mSubmittedCount.get() - mBusyCount.get())) {
+                return;
+            }
+            if (sQueueDelayTargetNanos > 0) {
+                // 优先级视图的任务已经按视图的优先级判断过
+                if (!(command instanceof PriorityView4Util.PriorityTask) && shedOnOverload(this, command, mPriority)) {
+                    return;
+                }
+                mDelayControl.markEnqueued(command);
+            }
+            // 先自增再获取加1后的值
+            mSubmittedCount.incrementAndGet();
+            if (sStallWatchdogEnabled) {
+                Thread current = Thread.currentThread();
+                if (mRunningTasks.containsKey(current)) {
+                    mNestedSubmitters.add(current);
+                }
+            }
+            if (offerLocal(command)) {
+                return;
+            }
+            dispatch(command);
+        }
+
+        /**
+         * 批量提交，先按原来的方式提交到补齐核心线程，剩下的一次性加入队列，队列不接受的再逐个提交
+         * 只在开始时获取一次线程数，入队时不再打印日志和获取线程数
+         * @param commands 任务
+         */
+        private void executeAll(List<Runnable> commands) {
+            if (this.isShutdown()) {
+                for (Runnable command : commands) {
+                    PriorityView4Util.onDropped(command);
+                }
+                return;
+            }
+            LocalQueue4Util localQueue = isLocalQueueEnabled ? LOCAL_QUEUE.get() : null;
+            if (sMemoryPressure || isOverloaded() || (localQueue != null && localQueue.mPool == this)) {
+                // 内存紧张或者过载时要逐个判断，本线程池的线程提交的任务放入本地队列
+                for (Runnable command : commands) {
+                    execute(command);
+                }
+                return;
+            }
+            if (sQueueDelayTargetNanos > 0) {
+                for (Runnable command : commands) {
+                    mDelayControl.markEnqueued(command);
+                }
+            }
+            int size = commands.size();
+            mSubmittedCount.addAndGet(size);
+            if (sStallWatchdogEnabled) {
+                Thread current = Thread.currentThread();
+                if (mRunningTasks.containsKey(current)) {
+                    mNestedSubmitters.add(current);
+                }
+            }
+            int index = 0;
+            int missing = getCorePoolSize() - getPoolSize();
+            for (; index < size && missing > 0; index++, missing--) {
+                dispatch(commands.get(index));
+            }
+            if (index < size) {
+                index += mWorkQueue.offerAll(commands, index);
+                if (index > 0 && getPoolSize() == 0) {
+                    // 线程都已经退出(例如没有核心线程)，新建一个线程执行队列里的任务
+                    prestartCoreThread();
+                }
+            }
+            for (; index < size; index++) {
+                dispatch(commands.get(index));
+            }
+        }
+
+        /**
+         * @return 是否开启了排队延迟控制并且过载
+         */
+        private boolean isOverloaded() {
+            return sQueueDelayTargetNanos > 0 && mDelayControl.isOverloaded(mSubmittedCount.get() - mBusyCount.get());
+        }
+
+        /**
+         * 提交给ThreadPoolExecutor，线程数已达上限时强制加入队列，队列也满了则拒绝
+         * 拒绝时BaseTask回调onFail，其他任务(包括舱壁等包装过的任务)抛出RejectedExecutionException，由提交者处理
+         */
+        private void dispatch(Runnable command) {
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException ignore) {
+                // 线程数已达上限，不能再新建线程，强制加入队列等待
+                if (!mWorkQueue.forceOffer(command)) {
+                    // 有界队列也已经满了，只能拒绝该任务
+                    mSubmittedCount.decrementAndGet();
+                    Log.e(TAG, "The work queue is full, task rejected.");
+                    RejectedExecutionException e = new RejectedExecutionException("The work queue is full.");
+                    PriorityView4Util.onDropped(command);
+                    Runnable task = PriorityView4Util.unwrap(command);
+                    if (!(task instanceof BaseTask)) {
+                        throw e;
+                    }
+                    ((BaseTask<?>) task).reject(e);
+                }
+            } catch (RuntimeException | Error e) {
+                mSubmittedCount.decrementAndGet();
+                PriorityView4Util.onDropped(command);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean remove(Runnable task) {
+            boolean isRemoved = super.remove(task);
+            if (isRemoved) {
+                mSubmittedCount.decrementAndGet();
+            }
+            return isRemoved;
+        }
+
+        /**
+         * 如果是本线程池的线程提交的任务，放入该线程的本地队列，
+         * 该线程执行完当前任务后后进先出地执行，趁缓存还热；空闲的线程则先进先出地窃取
+         * @param command 任务
+         * @return 是否放入了本地队列
+         */
+        private boolean offerLocal(Runnable command) {
+            if (!isLocalQueueEnabled) {
+                return false;
+            }
+            LocalQueue4Util localQueue = LOCAL_QUEUE.get();
+            if (localQueue == null || localQueue.mPool != this || !localQueue.push(command)) {
+                return false;
+            }
+            // 有空闲的线程就通知它来窃取；线程数还没到上限时和普通任务一样新建线程来窃取，
+            // 否则当前任务阻塞等待这个任务时，它会一直留在本地队列里；
+            // 线程都在忙并且不能再新建时，由当前线程或者先执行完的线程执行
+            int workerCount = mWorkerCount.get();
+            if (mBusyCount.get() < workerCount || workerCount < getMaximumPoolSize()) {
+                postStealSignal();
+            }
+            return true;
+        }
+
+        private void postStealSignal() {
+            mSubmittedCount.incrementAndGet();
+            try {
+                super.execute(mStealSignal);
+            } catch (RejectedExecutionException ignore) {
+                if (!mWorkQueue.forceOffer(mStealSignal)) {
+                    mSubmittedCount.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * 在线程执行完一个任务后调用，先执行自己本地队列的任务，再窃取其他线程本地队列的任务，直到都为空
+         */
+        private void runLocalTasks() {
+            LocalQueue4Util localQueue = LOCAL_QUEUE.get();
+            if (localQueue == null) {
+                return;
+            }
+            Runnable task;
+            while ((task = localQueue.pollLast()) != null || (task = steal(localQueue)) != null) {
+                if (!isShutdown()) {
+                    // 和ThreadPoolExecutor一样，执行任务之前清掉上一个任务遗留的中断标记
+                    Thread.interrupted();
+                }
+                beforeRun(Thread.currentThread(), task);
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    Log.e(TAG, "Request threw uncaught throwable", throwable);
+                } finally {
+                    mSubmittedCount.decrementAndGet();
+                    mCompletedCount.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * 内存紧张：空闲线程(包括核心线程)短时间后退出，低优先级线程池把排队的任务拿出来推迟或取消
+         */
+        private void enterMemoryPressure() {
+            if (mSavedKeepAliveNanos >= 0) {
+                return;
+            }
+            mSavedKeepAliveNanos = getKeepAliveTime(TimeUnit.NANOSECONDS);
+            if (mSavedKeepAliveNanos == 0 || mSavedKeepAliveNanos > TimeUnit.MILLISECONDS.toNanos(PRESSURE_KEEP_ALIVE_MILLIS)) {
+                setKeepAliveTime(PRESSURE_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            allowCoreThreadTimeOut(true);
+            if (!isLowPriority) {
+                return;
+            }
+            List<Runnable> queued = new ArrayList<>();
+            getQueue().drainTo(queued);
+            for (Runnable runnable : queued) {
+                mSubmittedCount.decrementAndGet();
+                if (runnable != mStealSignal) {
+                    deferOrCancel(this, runnable);
+                }
+            }
+        }
+
+        /**
+         * 内存恢复：还原空闲线程的存活时间，核心线程在之后提交任务时重新创建
+         */
+        private void exitMemoryPressure() {
+            if (mSavedKeepAliveNanos < 0) {
+                return;
+            }
+            allowCoreThreadTimeOut(false);
+            setKeepAliveTime(mSavedKeepAliveNanos, TimeUnit.NANOSECONDS);
+            mSavedKeepAliveNanos = -1;
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return mCompletedCount.get();
+        }
+
+        @Override
+        public int getQueuedCount() {
+            int count = getQueue().size();
+            for (LocalQueue4Util localQueue : mLocalQueues) {
+                count += localQueue.size();
+            }
+            return count;
+        }
+
+        @Override
+        public Map<Thread, Runnable> getRunningTasks() {
+            return new HashMap<>(mRunningTasks);
+        }
+
+        @Override
+        public boolean isNestedSubmitter(Thread thread) {
+            return mNestedSubmitters.contains(thread);
+        }
+
+        @Override
+        public boolean compensate() {
+            if (mCompensation >= MAX_COMPENSATION || isShutdown()) {
+                return false;
+            }
+            mCompensation++;
+            // 先加最大线程数再加核心线程数，队列有任务时会马上新建线程
+            setMaximumPoolSize(getMaximumPoolSize() + 1);
+            setCorePoolSize(getCorePoolSize() + 1);
+            if (isLocalQueueEnabled) {
+                // 新线程从共享队列取到信号后会去窃取卡在本地队列里的任务
+                mSubmittedCount.incrementAndGet();
+                if (!mWorkQueue.offer(mStealSignal) && !mWorkQueue.forceOffer(mStealSignal)) {
+                    mSubmittedCount.decrementAndGet();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void restoreCompensation() {
+            if (mCompensation == 0) {
+                return;
+            }
+            // 多出的线程空闲后会自动退出
+            setCorePoolSize(getCorePoolSize() - mCompensation);
+            setMaximumPoolSize(getMaximumPoolSize() - mCompensation);
+            mCompensation = 0;
+        }
+
+        /**
+         * 从其他线程的本地队列头部窃取一个任务
+         * @param self 当前线程的本地队列
+         * @return 任务
+         */
+        private Runnable steal(LocalQueue4Util self) {
+            for (LocalQueue4Util localQueue : mLocalQueues) {
+                if (localQueue == self) {
+                    continue;
+                }
+                Runnable task = localQueue.pollFirst();
+                if (task != null) {
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 线程启动时创建并登记本地队列，退出时注销
+         */
+        private final class LocalQueueThreadFactory implements ThreadFactory {
+
+            private final ThreadFactory mThreadFactory;
+
+            LocalQueueThreadFactory(ThreadFactory threadFactory) {
+                mThreadFactory = threadFactory;
+            }
+
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                return mThreadFactory.newThread(() -> {
+                    LocalQueue4Util localQueue = new LocalQueue4Util(ThreadPoolExecutor4Util.this);
+                    LOCAL_QUEUE.set(localQueue);
+                    mLocalQueues.add(localQueue);
+                    mWorkerCount.incrementAndGet();
+                    try {
+                        r.run();
+                    } finally {
+                        mWorkerCount.decrementAndGet();
+                        mLocalQueues.remove(localQueue);
+                        LOCAL_QUEUE.remove();
+                        // 正常情况下退出时本地队列已经为空，防止意外情况遗留的任务丢失
+                        Runnable task;
+                        while ((task = localQueue.pollFirst()) != null) {
+                            mWorkQueue.forceOffer(task);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 线程的本地队列，只有所属线程放入和从尾部取出，其他线程只从头部窃取
+     * 绝大多数情况只有所属线程在访问，锁没有竞争
+     */
+    private static final class LocalQueue4Util {
+
+        private final ThreadPoolExecutor4Util mPool;
+        private final ArrayDeque<Runnable> mDeque = new ArrayDeque<>();
+
+        LocalQueue4Util(ThreadPoolExecutor4Util pool) {
+            mPool = pool;
+        }
+
+        synchronized boolean push(Runnable runnable) {
+            if (mDeque.size() >= ThreadPoolExecutor4Util.LOCAL_QUEUE_LIMIT) {
+                return false;
+            }
+            mDeque.addLast(runnable);
+            return true;
+        }
+
+        synchronized Runnable pollLast() {
+            return mDeque.pollLast();
+        }
+
+        synchronized Runnable pollFirst() {
+            return mDeque.pollFirst();
+        }
+
+        synchronized int size() {
+            return mDeque.size();
+        }
+    }
+
+    /**
+     * ThreadUtils创建的线程池，提供卡死检测需要的信息
+     */
+    private interface Pool4Util {
+
+        /**
+         * @return 执行完的任务数
+         */
+        long getCompletedCount();
+
+        /**
+         * @return 队列中等待执行的任务数
+         */
+        int getQueuedCount();
+
+        /**
+         * @return 每个线程正在执行的任务，开启卡死检测时才有
+         */
+        Map<Thread, Runnable> getRunningTasks();
+
+        /**
+         * @param thread 线程
+         * @return 该线程正在执行的任务是否向本线程池提交过任务
+         */
+        boolean isNestedSubmitter(Thread thread);
+
+        /**
+         * 临时增加一个线程
+         * @return 是否增加了
+         */
+        boolean compensate();
+
+        /**
+         * 还原临时增加的线程
+         */
+        void restoreCompensation();
+    }
+
+    /**
+     * 卡死的回调
+     */
+    public interface OnStallListener {
+        /**
+         * 线程池卡死
+         * @param report 卡死报告
+         */
+        void onStall(StallReport report);
+    }
+
+    /**
+     * 线程池卡死报告
+     */
+    public static final class StallReport {
+
+        private final String mPoolName;
+        private final int mQueuedCount;
+        private final List<StalledWorker> mWorkers;
+        private final boolean isCompensated;
+
+        StallReport(String poolName, int queuedCount, List<StalledWorker> workers, boolean isCompensated) {
+            mPoolName = poolName;
+            mQueuedCount = queuedCount;
+            mWorkers = workers;
+            this.isCompensated = isCompensated;
+        }
+
+        public String getPoolName() {
+            return mPoolName;
+        }
+
+        public int getQueuedCount() {
+            return mQueuedCount;
+        }
+
+        public List<StalledWorker> getWorkers() {
+            return mWorkers;
+        }
+
+        public boolean isCompensated() {
+            return isCompensated;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Pool stalled: ").append(mPoolName)
+                    .append(", queued=").append(mQueuedCount)
+                    .append(", compensated=").append(isCompensated);
+            for (StalledWorker worker : mWorkers) {
+                builder.append('\n').append(worker);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 卡死线程池中的一个线程
+     */
+    public static final class StalledWorker {
+
+        private final String mThreadName;
+        private final Thread.State mThreadState;
+        private final Class<?> mTaskClass;
+        private final StackTraceElement[] mStackTrace;
+        private final boolean isWaitingSyncValue;
+        private final boolean isWaitingOwnPool;
+
+        StalledWorker(Thread thread, Runnable task, boolean isWaitingSyncValue, boolean isWaitingOwnPool) {
+            mThreadName = thread.getName();
+            mThreadState = thread.getState();
+            mTaskClass = task.getClass();
+            mStackTrace = thread.getStackTrace();
+            this.isWaitingSyncValue = isWaitingSyncValue;
+            this.isWaitingOwnPool = isWaitingOwnPool;
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        public Thread.State getThreadState() {
+            return mThreadState;
+        }
+
+        public Class<?> getTaskClass() {
+            return mTaskClass;
+        }
+
+        public StackTraceElement[] getStackTrace() {
+            return mStackTrace;
+        }
+
+        /**
+         * @return 是否阻塞在SyncValue.getValue()
+         */
+        public boolean isWaitingSyncValue() {
+            return isWaitingSyncValue;
+        }
+
+        /**
+         * @return 是否向自己的线程池提交了任务后阻塞等待，很可能是自己等自己
+         */
+        public boolean isWaitingOwnPool() {
+            return isWaitingOwnPool;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(mThreadName).append(' ').append(mThreadState)
+                    .append(" task=").append(mTaskClass.getName());
+            if (isWaitingSyncValue) {
+                builder.append(" waiting SyncValue");
+            }
+            if (isWaitingOwnPool) {
+                builder.append(" waiting own pool");
+            }
+            for (StackTraceElement element : mStackTrace) {
+                builder.append("\n    at ").append(element);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 定时检查线程池是否卡死：队列里有任务，但是两次检查之间一个任务都没执行完
+     */
+    private static final class StallWatchdog implements Runnable {
+
+        private final boolean isCompensate;
+        private final OnStallListener mListener;
+        /**
+         * 上一次检查时每个线程池执行完的任务数，只在检测线程读写
+         */
+        private final Map<ExecutorService, Long> mLastCompletedCounts = new HashMap<>();
+        /**
+         * 已经报告过卡死的线程池，恢复之前不再重复报告
+         */
+        private final Set<ExecutorService> mStalledPools = new HashSet<>();
+        private volatile Future<?> mFuture;
+
+        StallWatchdog(boolean isCompensate, OnStallListener listener) {
+            this.isCompensate = isCompensate;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            for (ExecutorService pool : getAllPools()) {
+                if (!(pool instanceof Pool4Util)) {
+                    continue;
+                }
+                Pool4Util pool4Util = (Pool4Util) pool;
+                long completedCount = pool4Util.getCompletedCount();
+                int queuedCount = pool4Util.getQueuedCount();
+                Long lastCompletedCount = mLastCompletedCounts.put(pool, completedCount);
+                boolean isStalled = lastCompletedCount != null
+                        && lastCompletedCount == completedCount && queuedCount > 0;
+                if (!isStalled) {
+                    if (queuedCount == 0 && mStalledPools.remove(pool)) {
+                        // 已经恢复，还原临时增加的线程
+                        pool4Util.restoreCompensation();
+                    }
+                    continue;
+                }
+                boolean isCompensated = isCompensate && pool4Util.compensate();
+                if (!mStalledPools.add(pool)) {
+                    // 已经报告过了
+                    continue;
+                }
+                List<StalledWorker> workers = new ArrayList<>();
+                for (Map.Entry<Thread, Runnable> entry : pool4Util.getRunningTasks().entrySet()) {
+                    Thread thread = entry.getKey();
+                    boolean isWaitingSyncValue = SYNC_VALUE_WAITERS.contains(thread);
+                    Thread.State state = thread.getState();
+                    boolean isBlocked = state == Thread.State.WAITING
+                            || state == Thread.State.TIMED_WAITING || state == Thread.State.BLOCKED;
+                    workers.add(new StalledWorker(thread, entry.getValue(), isWaitingSyncValue,
+                            isBlocked && pool4Util.isNestedSubmitter(thread)));
+                }
+                StallReport report = new StallReport(pool.toString(), queuedCount, workers, isCompensated);
+                Log.e(TAG, report.toString());
+                if (mListener != null) {
+                    try {
+                        mListener.onStall(report);
+                    } catch (Throwable t) {
+                        // 回调抛出异常会导致定时检查停止，这里只打印
+                        Log.e(TAG, "OnStallListener threw throwable", t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 单线程的串行线程池，用于TYPE_SINGLE
+     * 多个线程提交任务，只有一个线程执行，所以任务队列使用无锁的多生产者单消费者链表队列，
+     * 入队只需要一次getAndSet，不需要ThreadPoolExecutor的锁和LinkedBlockingQueue的两把锁
+     * 执行线程在队列为空时先自旋尝试几次，然后挂起，生产者入队后发现执行线程挂起了才去唤醒它
+     * 任务按提交的顺序依次执行
+     */
+    static final class SerialExecutor4Util extends AbstractExecutorService implements Pool4Util {
+
+        /**
+         * 挂起之前自旋尝试出队的次数
+         */
+        private static final int SPIN_TRIES = 128;
+
+        /**
+         * awaitPoll返回它表示执行线程已经空闲退出
+         */
+        private static final Runnable RETIRED = () -> {
+        };
+
+        private final ThreadFactory mThreadFactory;
+        /**
+         * 队尾，生产者通过getAndSet入队
+         */
+        private final AtomicReference<Node> mTail;
+        /**
+         * 队头，只有执行线程读写
+         */
+        private Node mHead;
+        /**
+         * 执行线程是否已经挂起或者准备挂起
+         */
+        private final AtomicBoolean mParked = new AtomicBoolean();
+        private final CountDownLatch mTerminated = new CountDownLatch(1);
+        private volatile boolean isShutdown;
+        /**
+         * shutdownNow后不再执行队列中剩下的任务
+         */
+        private volatile boolean isStopped;
+        private volatile Thread mWorker;
+        /**
+         * 入队的任务数，生产者在把节点连入队列之前增加，所以不会小于出队数
+         */
+        private final AtomicLong mEnqueuedCount = new AtomicLong();
+        /**
+         * 出队的任务数，只有执行线程写
+         */
+        private volatile long mDequeuedCount;
+        /**
+         * 执行完的任务数，只有执行线程写
+         */
+        private volatile long mCompletedCount;
+        /**
+         * 正在执行的任务，开启卡死检测时才记录
+         */
+        private volatile Runnable mCurrentTask;
+        /**
+         * 正在执行的任务又向本线程池提交了任务，开启卡死检测时才记录，任务执行完清除
+         */
+        private volatile boolean isWorkerNestedSubmitter;
+        /**
+         * 线程优先级低于普通优先级，内存紧张时推迟它的任务
+         */
+        private volatile boolean isLowPriority;
+
+        SerialExecutor4Util(ThreadFactory threadFactory) {
+            mThreadFactory = threadFactory;
+            mHead = new Node(null);
+            mTail = new AtomicReference<>(mHead);
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (isShutdown) {
+                return;
+            }
+            if (sMemoryPressure && shedOnPressure(this, command, isLowPriority, getQueuedCount())) {
+                return;
+            }
+            markNestedSubmitter();
+            Node node = new Node(command);
+            mEnqueuedCount.incrementAndGet();
+            Node prev = mTail.getAndSet(node);
+            prev.next = node;
+            if (mWorker == null) {
+                startWorker();
+            } else if (mParked.get() && mParked.compareAndSet(true, false)) {
+                LockSupport.unpark(mWorker);
+            }
+        }
+
+        /**
+         * 批量提交，先把任务连成一条链，只做一次入队和一次唤醒
+         * @param commands 任务
+         */
+        private void executeAll(List<Runnable> commands) {
+            if (isShutdown || commands.isEmpty()) {
+                return;
+            }
+            if (sMemoryPressure) {
+                for (Runnable command : commands) {
+                    execute(command);
+                }
+                return;
+            }
+            Node first = new Node(commands.get(0));
+            Node last = first;
+            for (int i = 1; i < commands.size(); i++) {
+                Node node = new Node(commands.get(i));
+                last.next = node;
+                last = node;
+            }
+            markNestedSubmitter();
+            mEnqueuedCount.addAndGet(commands.size());
+            Node prev = mTail.getAndSet(last);
+            // 连接后执行线程才能看到这条链
+            prev.next = first;
+            if (mWorker == null) {
+                startWorker();
+            } else if (mParked.get() && mParked.compareAndSet(true, false)) {
+                LockSupport.unpark(mWorker);
+            }
+        }
+
+        /**
+         * 执行线程在任务里向本线程池提交任务，之后如果等待这个任务就会卡死
+         */
+        private void markNestedSubmitter() {
+            if (sStallWatchdogEnabled && mCurrentTask != null && Thread.currentThread() == mWorker) {
+                isWorkerNestedSubmitter = true;
+            }
+        }
+
+        /**
+         * 第一次提交任务时创建执行线程
+         */
+        private synchronized void startWorker() {
+            if (mWorker != null || isShutdown) {
+                return;
+            }
+            // 没有执行线程时任务已经链入队列，只能新建；退出的线程可能还没归还预算，所以不受预算限制
+            Thread worker = mThreadFactory instanceof UtilsThreadFactory
+                    ? ((UtilsThreadFactory) mThreadFactory).newThread(this::runWorker, true)
+                    : mThreadFactory.newThread(this::runWorker);
+            if (worker == null) {
+                // 自定义的线程工厂没有创建线程，稍后重试，任务留在队列里
+                Log.w(TAG, "The thread factory returned null, retry starting the worker later.");
+                mExecutorService.schedule(this::startWorker, 10, TimeUnit.MILLISECONDS);
+                return;
+            }
+            mWorker = worker;
+            worker.start();
+        }
+
+        private void runWorker() {
+            boolean isRetired = false;
+            try {
+                for (; ; ) {
+                    if (isStopped) {
+                        return;
+                    }
+                    Runnable runnable = poll();
+                    if (runnable == null) {
+                        runnable = awaitPoll();
+                        if (runnable == null) {
+                            // 已经shutdown并且队列已经清空
+                            return;
+                        }
+                        if (runnable == RETIRED) {
+                            // 内存紧张时空闲退出，下次提交任务时重新创建
+                            isRetired = true;
+                            return;
+                        }
+                    }
+                    if (sStallWatchdogEnabled) {
+                        mCurrentTask = runnable;
+                    }
+                    try {
+                        runnable.run();
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Request threw uncaught throwable", t);
+                    } finally {
+                        mCurrentTask = null;
+                        if (isWorkerNestedSubmitter) {
+                            isWorkerNestedSubmitter = false;
+                        }
+                        mCompletedCount++;
+                    }
+                }
+            } finally {
+                if (!isRetired) {
+                    mTerminated.countDown();
+                }
+            }
+        }
+
+        /**
+         * 队列为空时先自旋，再挂起等待生产者唤醒
+         * @return 任务，已经shutdown并且队列为空则返回null
+         */
+        private Runnable awaitPoll() {
+            Runnable runnable;
+            for (int i = 0; i < SPIN_TRIES; i++) {
+                if ((runnable = poll()) != null) {
+                    return runnable;
+                }
+            }
+            for (; ; ) {
+                if (isShutdown) {
+                    return poll();
+                }
+                // 先标记挂起再检查一次队列，防止生产者在标记之前入队导致没有被唤醒
+                mParked.set(true);
+                if ((runnable = poll()) != null) {
+                    mParked.set(false);
+                    return runnable;
+                }
+                if (isShutdown) {
+                    continue;
+                }
+                if (!sMemoryPressure) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(PRESSURE_KEEP_ALIVE_MILLIS));
+                    if (sMemoryPressure && retire()) {
+                        return RETIRED;
+                    }
+                }
+                mParked.set(false);
+                // shutdownNow中断的是挂起，清掉中断标记后继续检查
+                Thread.interrupted();
+                if ((runnable = poll()) != null) {
+                    return runnable;
+                }
+            }
+        }
+
+        /**
+         * 内存紧张时空闲的执行线程退出
+         * 先清掉mWorker再检查队列，生产者是先入队再读mWorker，两边至少有一边能看到对方，不会丢任务
+         *
+         * @return 是否退出
+         */
+        private synchronized boolean retire() {
+            if (isShutdown || mWorker != Thread.currentThread()) {
+                return false;
+            }
+            mWorker = null;
+            if (mTail.get() != mHead) {
+                // 退出前有新任务入队，继续执行
+                mWorker = Thread.currentThread();
+                return false;
+            }
+            mParked.set(false);
+            return true;
+        }
+
+        /**
+         * 出队，只在执行线程调用
+         */
+        private Runnable poll() {
+            Node head = mHead;
+            Node next = head.next;
+            if (next == null) {
+                if (mTail.get() == head) {
+                    return null;
+                }
+                // 生产者已经getAndSet了队尾但还没连接next，等它连接完
+                while ((next = head.next) == null) {
+                    Thread.yield();
+                }
+            }
+            Runnable runnable = next.runnable;
+            next.runnable = null;
+            mHead = next;
+            mDequeuedCount++;
+            return runnable;
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return mCompletedCount;
+        }
+
+        @Override
+        public int getQueuedCount() {
+            return (int) Math.max(0, mEnqueuedCount.get() - mDequeuedCount);
+        }
+
+        @Override
+        public Map<Thread, Runnable> getRunningTasks() {
+            Map<Thread, Runnable> runningTasks = new HashMap<>();
+            Thread worker = mWorker;
+            Runnable currentTask = mCurrentTask;
+            if (worker != null && currentTask != null) {
+                runningTasks.put(worker, currentTask);
+            }
+            return runningTasks;
+        }
+
+        @Override
+        public boolean isNestedSubmitter(Thread thread) {
+            // 只有一个线程，任务里提交到自己再等待一定会卡死
+            return isWorkerNestedSubmitter && thread == mWorker;
+        }
+
+        @Override
+        public boolean compensate() {
+            // 增加线程会破坏顺序执行，不补偿
+            return false;
+        }
+
+        @Override
+        public void restoreCompensation() {
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+            Thread worker;
+            synchronized (this) {
+                worker = mWorker;
+                if (worker == null) {
+                    // 执行线程还没创建，直接结束
+                    mTerminated.countDown();
+                    return;
+                }
+            }
+            LockSupport.unpark(worker);
+        }
+
+        /**
+         * 队列只能由执行线程出队，所以这里只中断当前任务，队列中剩下的任务不再执行，返回的是空列表
+         */
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            isStopped = true;
+            shutdown();
+            Thread worker = mWorker;
+            if (worker != null) {
+                worker.interrupt();
+            }
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return mTerminated.getCount() == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            return mTerminated.await(timeout, unit);
+        }
+
+        private static final class Node {
+
+            private Runnable runnable;
+            private volatile Node next;
+
+            Node(Runnable runnable) {
+                this.runnable = runnable;
+            }
+        }
+    }
+
+    /**
+     * 相同大小、不同优先级的固定线程池：共用第一个创建的固定线程池的线程，执行任务时切换到自己的优先级，执行完还原
+     */
+    static final class PriorityView4Util extends AbstractExecutorService {
+
+        private final ThreadPoolExecutor4Util mPool;
+        private final int mPriority;
+        /**
+         * 已经提交还没执行完的任务数
+         */
+        private final AtomicInteger mPendingCount = new AtomicInteger();
+        private volatile boolean isShutdown;
+
+        PriorityView4Util(ThreadPoolExecutor4Util pool, int priority) {
+            mPool = pool;
+            mPriority = priority;
+        }
+
+        /**
+         * @return 去掉优先级包装后的任务
+         */
+        static Runnable unwrap(Runnable runnable) {
+            return runnable instanceof PriorityTask ? ((PriorityTask) runnable).mTask : runnable;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (isShutdown) {
+                return;
+            }
+            if (sMemoryPressure && shedOnPressure(this, command, mPriority < Thread.NORM_PRIORITY,
+                    mPool.mSubmittedCount.get() - mPool.mBusyCount.get())) {
+                return;
+            }
+            if (sQueueDelayTargetNanos > 0 && shedOnOverload(mPool, command, mPriority)) {
+                return;
+            }
+            if (mPool.isShutdown()) {
+                // 共用的线程池已经关闭，会直接丢弃任务，计数就不会归零
+                if (command instanceof BaseTask) {
+                    ((BaseTask<?>) command).reject(new RejectedExecutionException("Pool is shut down."));
+                }
+                return;
+            }
+            mPendingCount.incrementAndGet();
+            // 共用的线程池没有执行时会通过onDropped归还计数
+            mPool.execute(new PriorityTask(command));
+        }
+
+        private void executeAll(List<Runnable> commands) {
+            if (isShutdown) {
+                return;
+            }
+            if (sMemoryPressure || mPool.isOverloaded() || mPool.isShutdown()) {
+                for (Runnable command : commands) {
+                    execute(command);
+                }
+                return;
+            }
+            List<Runnable> priorityTasks = new ArrayList<>(commands.size());
+            for (Runnable command : commands) {
+                priorityTasks.add(new PriorityTask(command));
+            }
+            mPendingCount.addAndGet(priorityTasks.size());
+            mPool.executeAll(priorityTasks);
+        }
+
+        /**
+         * 一个任务执行完或者被共用的线程池丢弃，关闭后最后一个任务结束时唤醒awaitTermination
+         */
+        private void finishTask() {
+            if (mPendingCount.decrementAndGet() == 0 && isShutdown) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * 共用的线程池拒绝、丢弃或者取消了任务，不会再执行它时调用，归还视图的待执行计数
+         * 抛出异常的拒绝也在抛出之前调用，提交者不需要再处理计数
+         */
+        static void onDropped(Runnable runnable) {
+            if (runnable instanceof PriorityTask) {
+                ((PriorityTask) runnable).getView().finishTask();
+            }
+        }
+
+        /**
+         * 以视图的优先级执行的任务
+         */
+        private final class PriorityTask implements Runnable {
+
+            private final Runnable mTask;
+
+            PriorityTask(Runnable task) {
+                mTask = task;
+            }
+
+            PriorityView4Util getView() {
+                return PriorityView4Util.this;
+            }
+
+            @Override
+            public void run() {
+                Thread current = Thread.currentThread();
+                int oldPriority = current.getPriority();
+                if (oldPriority != mPriority) {
+                    setCurrentThreadPriority(mPriority, true);
+                }
+                try {
+                    mTask.run();
+                } finally {
+                    if (oldPriority != mPriority) {
+                        setCurrentThreadPriority(oldPriority, true);
+                    }
+                    finishTask();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            // 线程属于共用的线程池，只停止接收新任务
+            isShutdown = true;
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            isShutdown = true;
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown || mPool.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return isShutdown() && mPendingCount.get() == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (!isTerminated()) {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (millis <= 0) {
+                        return false;
+                    }
+                    wait(millis);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 舱壁：借用父线程池的线程，限制同时执行和排队的任务数
+     * 获得许可的任务才提交到父线程池，执行完后由同一个线程把下一个排队的任务提交上去；
+     * 入队后和释放许可后都会再检查一次队列，所以不会出现有许可、有任务但没人提交的情况
+     */
+    public static final class Bulkhead extends AbstractExecutorService {
+
+        /**
+         * 拒绝新任务，BaseTask回调onFail，其他Runnable抛出RejectedExecutionException
+         */
+        public static final int REJECT_ABORT = 0;
+        /**
+         * 在提交任务的线程中直接执行，提交者会被这个任务阻塞，起到限流的作用
+         * 提交者是主线程时不能在主线程执行耗时任务，按{@link #REJECT_ABORT}处理
+         */
+        public static final int REJECT_CALLER_RUNS = 1;
+        /**
+         * 拒绝排队最久的任务，新任务入队
+         */
+        public static final int REJECT_DISCARD_OLDEST = 2;
+
+        private final String mName;
+        private final ExecutorService mParent;
+        private final int mMaxConcurrent;
+        private final int mMaxQueued;
+        private final int mRejectPolicy;
+        private final ConcurrentLinkedQueue<Runnable> mQueue = new ConcurrentLinkedQueue<>();
+        /**
+         * 正在父线程池中执行或者等待执行的任务数，即已经占用的许可数
+         */
+        private final AtomicInteger mRunningCount = new AtomicInteger();
+        private final AtomicInteger mQueuedCount = new AtomicInteger();
+        private final AtomicLong mCompletedCount = new AtomicLong();
+        private final AtomicLong mRejectedCount = new AtomicLong();
+        private volatile int mPeakRunningCount;
+        private volatile boolean isShutdown;
+
+        private Bulkhead(final String name, final ExecutorService parent, final int maxConcurrent,
+                         final int maxQueued, final int rejectPolicy) {
+            mName = name;
+            mParent = parent;
+            mMaxConcurrent = maxConcurrent;
+            mMaxQueued = maxQueued;
+            mRejectPolicy = rejectPolicy;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (isShutdown) {
+                return;
+            }
+            // 有任务在排队时新任务也要排队，不能插到它们前面
+            if (mQueue.isEmpty() && tryAcquire()) {
+                try {
+                    dispatch(command, true);
+                } finally {
+                    // 父线程池拒绝时许可已经归还，这期间入队的任务要有人提交
+                    drain();
+                }
+                return;
+            }
+            if (mQueuedCount.incrementAndGet() > mMaxQueued) {
+                mQueuedCount.decrementAndGet();
+                if (!reject(command)) {
+                    return;
+                }
+                mQueuedCount.incrementAndGet();
+            }
+            mQueue.offer(command);
+            // 入队期间可能有任务执行完释放了许可
+            drain();
+        }
+
+        private boolean tryAcquire() {
+            for (; ; ) {
+                int running = mRunningCount.get();
+                if (running >= mMaxConcurrent) {
+                    return false;
+                }
+                if (mRunningCount.compareAndSet(running, running + 1)) {
+                    if (running + 1 > mPeakRunningCount) {
+                        mPeakRunningCount = running + 1;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 有许可就把排队的任务提交到父线程池
+         */
+        private void drain() {
+            while (!mQueue.isEmpty() && tryAcquire()) {
+                Runnable next = mQueue.poll();
+                if (next == null) {
+                    mRunningCount.decrementAndGet();
+                    continue;
+                }
+                mQueuedCount.decrementAndGet();
+                dispatch(next, false);
+            }
+        }
+
+        /**
+         * @param isSubmitter 是否在提交command的线程中，排队的任务由别的线程提交，拒绝时不能把异常抛给那个线程
+         */
+        private void dispatch(final Runnable command, final boolean isSubmitter) {
+            try {
+                mParent.execute(new BulkheadTask(command));
+            } catch (RejectedExecutionException e) {
+                mRunningCount.decrementAndGet();
+                mRejectedCount.incrementAndGet();
+                if (isSubmitter) {
+                    rejectTask(command, e);
+                } else if (command instanceof BaseTask) {
+                    ((BaseTask<?>) command).reject(e);
+                } else {
+                    Log.e(TAG, e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * 排队已满时按拒绝策略处理
+         *
+         * @return 是否还需要把command加入队列
+         */
+        private boolean reject(final Runnable command) {
+            mRejectedCount.incrementAndGet();
+            switch (mRejectPolicy) {
+                case REJECT_CALLER_RUNS:
+                    if (isMainThread()) {
+                        RejectedExecutionException e = new RejectedExecutionException("Bulkhead " + mName
+                                + " is full, caller runs is not allowed on the main thread.");
+                        if (!(command instanceof BaseTask)) {
+                            Log.e(TAG, e.getMessage());
+                            throw e;
+                        }
+                        rejectTask(command, e);
+                        return false;
+                    }
+                    command.run();
+                    mCompletedCount.incrementAndGet();
+                    return false;
+                case REJECT_DISCARD_OLDEST:
+                    Runnable oldest = mQueue.poll();
+                    if (oldest == null) {
+                        rejectTask(command, new RejectedExecutionException("Bulkhead " + mName + " is full."));
+                        return false;
+                    }
+                    mQueuedCount.decrementAndGet();
+                    rejectTask(oldest, new RejectedExecutionException("Bulkhead " + mName + " discarded the oldest task."));
+                    return true;
+                default:
+                    rejectTask(command, new RejectedExecutionException("Bulkhead " + mName + " is full."));
+                    return false;
+            }
+        }
+
+        private void rejectTask(final Runnable command, final RejectedExecutionException e) {
+            Log.e(TAG, e.getMessage());
+            if (command instanceof BaseTask) {
+                ((BaseTask<?>) command).reject(e);
+            } else if (mRejectPolicy == REJECT_ABORT) {
+                throw e;
+            }
+        }
+
+        private void onTaskFinished() {
+            mCompletedCount.incrementAndGet();
+            mRunningCount.decrementAndGet();
+            drain();
+            if (isShutdown && isTerminated()) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * 在父线程池中执行的包装，执行完后释放许可
+         */
+        private final class BulkheadTask implements Runnable {
+
+            private final Runnable mCommand;
+
+            BulkheadTask(Runnable command) {
+                mCommand = command;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    mCommand.run();
+                } finally {
+                    onTaskFinished();
+                }
+            }
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getMaxConcurrent() {
+            return mMaxConcurrent;
+        }
+
+        public int getMaxQueued() {
+            return mMaxQueued;
+        }
+
+        /**
+         * @return 正在执行的任务数
+         */
+        public int getRunningCount() {
+            return mRunningCount.get();
+        }
+
+        /**
+         * @return 达到过的最大同时执行数
+         */
+        public int getPeakRunningCount() {
+            return mPeakRunningCount;
+        }
+
+        /**
+         * @return 在舱壁队列中排队的任务数
+         */
+        public int getQueuedCount() {
+            return mQueuedCount.get();
+        }
+
+        public long getCompletedCount() {
+            return mCompletedCount.get();
+        }
+
+        public long getRejectedCount() {
+            return mRejectedCount.get();
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            isShutdown = true;
+            List<Runnable> remaining = new ArrayList<>();
+            Runnable runnable;
+            while ((runnable = mQueue.poll()) != null) {
+                mQueuedCount.decrementAndGet();
+                remaining.add(runnable);
+            }
+            return remaining;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return isShutdown && mRunningCount.get() == 0 && mQueue.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (!isTerminated()) {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (millis <= 0) {
+                        return false;
+                    }
+                    wait(millis);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Bulkhead{" + mName
+                    + ", running=" + getRunningCount() + "/" + mMaxConcurrent
+                    + ", queued=" + getQueuedCount() + "/" + mMaxQueued
+                    + ", completed=" + getCompletedCount()
+                    + ", rejected=" + getRejectedCount()
+                    + ", peak=" + mPeakRunningCount
+                    + '}';
+        }
+    }
+
+    /**
+     * 线程池的任务队列
+     */
+    private interface WorkQueue4Util extends BlockingQueue<Runnable> {
+
+        /**
+         * 绑定所属线程池
+         * @param pool 线程池
+         */
+        void setPool(ThreadPoolExecutor4Util pool);
+
+        /**
+         * 线程数已达上限被线程池拒绝时调用，不做任何判断直接加入队列
+         * @param runnable 任务
+         * @return 是否加入队列
+         */
+        boolean forceOffer(Runnable runnable);
+
+        /**
+         * 批量提交时把任务依次加入队列，遇到不能加入的就停止，剩下的由线程池逐个提交
+         * @param runnables 任务
+         * @param from 从这个下标开始
+         * @return 加入队列的任务数
+         */
+        int offerAll(List<Runnable> runnables, int from);
+    }
+
+    /**
+     * 任务队列类
+     * LinkedBlockingQueue这个队列接收到任务的时候，如果当前线程数小于核心线程数，则新建线程(核心线程)处理任务；
+     * 如果当前线程数等于核心线程数，则进入队列等待。
+     * 由于这个队列没有最大值限制，即所有超过核心线程数的任务都将被添加到队列中，
+     * 这也就导致了 maximumPoolSize 的设定失效，因为总线程数永远不会超过 corePoolSize
+     *
+     * size()是线程队伍排列的总数
+     *
+     * TYPE_SINGLE：
+     * 该类型的线程池mPool一直只有一条线程，并且size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
+     * TYPE_IO:
+     * 涉及到网络、磁盘IO的任务都是IO密集型任务
+     * 核心线程和总线程是根据cpu计算的，是cpu的2倍+1，并且队列size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
+     * 其他，例如Fixed：
+     * 核心线程和总线程是自定义的，并且size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
+     * TYPE_CACHED、TYPE_CPU 需要先加线程再加队列，使用的是{@link TransferQueue4Util}
+     *
+     */
+    private static final class LinkedBlockingQueue4Util extends LinkedBlockingQueue<Runnable>
+            implements WorkQueue4Util {
+
+        /**
+         * 线程池
+         */
+        private volatile ThreadPoolExecutor4Util mPool;
+
+        private int mCapacity = Integer.MAX_VALUE;
+
+        LinkedBlockingQueue4Util() {
+            super();
+        }
+
+        LinkedBlockingQueue4Util(int capacity) {
+            super();
+            mCapacity = capacity;
+        }
+
+        @Override
+        public boolean offer(@NonNull Runnable runnable) {
+            Log.d(TAG,"offer mCapacity:" + mCapacity + "size():" + size() + "mPool:" + (mPool != null ? mPool.getPoolSize() : "null"));
+            boolean isOffer;
+            // 如果线程数最大值 小于等于 当前线程数 并且 线程池不为空 并且 线程池的线程总数小于线程池的线程总数值
+            if (mCapacity <= size() &&
+                    mPool != null && mPool.getPoolSize() < mPool.getMaximumPoolSize()) {
+                // 返回false表示不加入队列
+                isOffer = false;
+                if (!isOffer) {
+                    Log.d(TAG, "isOffer:" + isOffer);
+                }
+                return isOffer;
+            }
+            isOffer = super.offer(runnable);
+            if (!isOffer) {
+                Log.d(TAG, "isOffer:" + isOffer);
+            }
+            return isOffer;
+        }
+
+        @Override
+        public void setPool(ThreadPoolExecutor4Util pool) {
+            mPool = pool;
+        }
+
+        @Override
+        public boolean forceOffer(Runnable runnable) {
+            return super.offer(runnable);
+        }
+
+        @Override
+        public int offerAll(List<Runnable> runnables, int from) {
+            // 核心线程已经创建，只需要判断一次容量，不再每个任务都获取线程数
+            int count = Math.min(runnables.size() - from, mCapacity - size());
+            for (int i = 0; i < count; i++) {
+                if (!super.offer(runnables.get(from + i))) {
+                    return i;
+                }
+            }
+            return Math.max(0, count);
+        }
+    }
+
+    /**
+     * 先加线程再加队列的任务队列类，用于TYPE_CACHED、TYPE_CPU
+     * offer时通过tryTransfer把任务直接交给正在poll/take等待的空闲线程，交接成功返回true；
+     * 没有空闲线程则返回false，线程池就会新建线程执行该任务；
+     * 线程数达到最大值后线程池拒绝该任务，再由{@link ThreadPoolExecutor4Util#execute(Runnable)}调用forceOffer加入队列。
+     * 交接是原子的，不需要通过getPoolSize()获取线程池的锁来判断线程数，多个线程同时提交也不会出现竞争
+     */
+    private static final class TransferQueue4Util extends LinkedTransferQueue<Runnable>
+            implements WorkQueue4Util {
+
+        private static final long serialVersionUID = -2874019586350291738L;
+
+        @Override
+        public boolean offer(@NonNull Runnable runnable) {
+            return tryTransfer(runnable);
+        }
+
+        @Override
+        public void setPool(ThreadPoolExecutor4Util pool) {
+            // 交接由队列自身完成，不需要知道线程池的线程数
+        }
+
+        @Override
+        public boolean forceOffer(Runnable runnable) {
+            return super.offer(runnable);
+        }
+
+        @Override
+        public int offerAll(List<Runnable> runnables, int from) {
+            // 只交给正在等待的空闲线程，剩下的需要线程池新建线程
+            int count = 0;
+            while (from + count < runnables.size() && hasWaitingConsumer()
+                    && tryTransfer(runnables.get(from + count))) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 无锁的有界数组队列，多生产者多消费者
+     * 每个格子有一个序号，生产者和消费者分别通过CAS抢占入队位置和出队位置，格子的序号表示该格子当前能否写入或读取，
+     * 相比LinkedBlockingQueue不需要每个任务新建一个节点，也没有两把锁的竞争
+     * 队列为空时消费者先自旋尝试几次，然后挂起等待生产者唤醒
+     * 容量会向上取整为2的幂(至少为2)，队列满了offer返回false
+     */
+    static final class ArrayBlockingQueue4Util extends AbstractQueue<Runnable>
+            implements WorkQueue4Util {
+
+        /**
+         * 挂起之前自旋尝试出队的次数
+         */
+        private static final int SPIN_TRIES = 64;
+        /**
+         * 被移除的任务留下的占位
+         */
+        private static final Runnable REMOVED = () -> {
+        };
+
+        private final int mMask;
+        private final AtomicReferenceArray<Runnable> mItems;
+        /**
+         * 每个格子的序号，等于入队位置表示可以写入，等于入队位置+1表示可以读取
+         */
+        private final AtomicLongArray mSequences;
+        private final PaddedAtomicLong mEnqueuePos = new PaddedAtomicLong();
+        private final PaddedAtomicLong mDequeuePos = new PaddedAtomicLong();
+        /**
+         * 挂起等待任务的消费者线程
+         */
+        private final ConcurrentLinkedQueue<Thread> mWaiters = new ConcurrentLinkedQueue<>();
+
+        ArrayBlockingQueue4Util(@IntRange(from = 1) int capacity) {
+            // 至少2个格子：只有1个格子时，写入后的序号pos+1等于下一个入队位置，满了也会被当成可以写入
+            int size = 2;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            mMask = size - 1;
+            mItems = new AtomicReferenceArray<>(size);
+            mSequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                mSequences.set(i, i);
+            }
+        }
+
+        @Override
+        public boolean offer(@NonNull Runnable runnable) {
+            long pos = mEnqueuePos.get();
+            int index;
+            for (; ; ) {
+                index = (int) (pos & mMask);
+                long dif = mSequences.get(index) - pos;
+                if (dif == 0) {
+                    // 格子可以写入，抢占入队位置
+                    if (mEnqueuePos.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                    pos = mEnqueuePos.get();
+                } else if (dif < 0) {
+                    // 格子还没被消费，队列已满
+                    return false;
+                } else {
+                    // 被其他生产者抢先了，重新获取入队位置
+                    pos = mEnqueuePos.get();
+                }
+            }
+            mItems.lazySet(index, runnable);
+            mSequences.set(index, pos + 1);
+            signalWaiter();
+            return true;
+        }
+
+        @Override
+        public Runnable poll() {
+            Runnable runnable;
+            do {
+                runnable = pollSlot();
+                // 跳过被remove()移除的格子
+            } while (runnable == REMOVED);
+            return runnable;
+        }
+
+        private Runnable pollSlot() {
+            long pos = mDequeuePos.get();
+            int index;
+            for (; ; ) {
+                index = (int) (pos & mMask);
+                long dif = mSequences.get(index) - (pos + 1);
+                if (dif == 0) {
+                    // 格子可以读取，抢占出队位置
+                    if (mDequeuePos.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                    pos = mDequeuePos.get();
+                } else if (dif < 0) {
+                    // 格子还没写入，队列为空
+                    return null;
+                } else {
+                    // 被其他消费者抢先了，重新获取出队位置
+                    pos = mDequeuePos.get();
+                }
+            }
+            Runnable runnable = mItems.getAndSet(index, null);
+            // 格子序号加一圈，留给下一圈的生产者写入
+            mSequences.set(index, pos + mMask + 1);
+            return runnable;
+        }
+
+        @Override
+        public Runnable peek() {
+            long pos = mDequeuePos.get();
+            long end = mEnqueuePos.get();
+            for (; pos < end; pos++) {
+                int index = (int) (pos & mMask);
+                if (mSequences.get(index) - (pos + 1) != 0) {
+                    return null;
+                }
+                Runnable runnable = mItems.get(index);
+                if (runnable != REMOVED) {
+                    return runnable;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void put(@NonNull Runnable runnable) throws InterruptedException {
+            while (!offer(runnable)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable runnable, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!offer(runnable)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                Thread.yield();
+            }
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public Runnable take() throws InterruptedException {
+            return awaitPoll(false, 0L);
+        }
+
+        @Override
+        public Runnable poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            return awaitPoll(true, unit.toNanos(timeout));
+        }
+
+        /**
+         * 出队，队列为空时先自旋，再挂起等待
+         * @param timed 是否限时
+         * @param nanos 限时的纳秒数
+         * @return 任务，限时到了返回null
+         */
+        private Runnable awaitPoll(boolean timed, long nanos) throws InterruptedException {
+            Runnable runnable;
+            for (int i = 0; i < SPIN_TRIES; i++) {
+                if ((runnable = poll()) != null) {
+                    return runnable;
+                }
+            }
+            final long deadline = timed ? System.nanoTime() + nanos : 0L;
+            Thread current = Thread.currentThread();
+            for (; ; ) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                // 先登记再检查一次队列，防止生产者在登记之前入队导致没有被唤醒
+                mWaiters.add(current);
+                if ((runnable = poll()) != null) {
+                    if (!mWaiters.remove(current)) {
+                        // 已经被生产者取出准备唤醒了，把唤醒传递给下一个等待者
+                        signalWaiter();
+                    }
+                    return runnable;
+                }
+                if (timed) {
+                    nanos = deadline - System.nanoTime();
+                    if (nanos <= 0L) {
+                        if (!mWaiters.remove(current)) {
+                            signalWaiter();
+                        }
+                        return poll();
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+                mWaiters.remove(current);
+                if ((runnable = poll()) != null) {
+                    return runnable;
+                }
+            }
+        }
+
+        /**
+         * 唤醒一个挂起等待的消费者
+         */
+        private void signalWaiter() {
+            Thread waiter = mWaiters.poll();
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        @Override
+        public int size() {
+            long size = mEnqueuePos.get() - mDequeuePos.get();
+            if (size < 0) {
+                return 0;
+            }
+            return (int) Math.min(size, mItems.length());
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return mItems.length() - size();
+        }
+
+        /**
+         * 无锁队列不能从中间删除格子，移除时把格子里的任务换成REMOVED占位，出队时跳过
+         * 占位在出队之前仍然占用容量，size()也会计入
+         */
+        @Override
+        public boolean remove(Object o) {
+            if (o == null) {
+                return false;
+            }
+            long end = mEnqueuePos.get();
+            for (long pos = mDequeuePos.get(); pos < end; pos++) {
+                int index = (int) (pos & mMask);
+                if (mSequences.get(index) == pos + 1 && mItems.compareAndSet(index, (Runnable) o, REMOVED)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int drainTo(@NonNull Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(@NonNull Collection<? super Runnable> c, int maxElements) {
+            int count = 0;
+            Runnable runnable;
+            while (count < maxElements && (runnable = poll()) != null) {
+                c.add(runnable);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * 返回当前队列中任务的快照
+         */
+        @NonNull
+        @Override
+        public Iterator<Runnable> iterator() {
+            List<Runnable> snapshot = new ArrayList<>();
+            long start = mDequeuePos.get();
+            long end = mEnqueuePos.get();
+            for (long pos = start; pos < end; pos++) {
+                int index = (int) (pos & mMask);
+                Runnable runnable = mItems.get(index);
+                if (runnable != null && runnable != REMOVED && mSequences.get(index) == pos + 1) {
+                    snapshot.add(runnable);
+                }
+            }
+            final Iterator<Runnable> iterator = snapshot.iterator();
+            return new Iterator<Runnable>() {
+
+                private Runnable mLast;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    mLast = iterator.next();
+                    return mLast;
+                }
+
+                /**
+                 * 从队列中移除，线程池的purge()通过它移除任务
+                 */
+                @Override
+                public void remove() {
+                    if (mLast == null) {
+                        throw new IllegalStateException();
+                    }
+                    ArrayBlockingQueue4Util.this.remove(mLast);
+                    mLast = null;
+                }
+            };
+        }
+
+        @Override
+        public void setPool(ThreadPoolExecutor4Util pool) {
+            // 有界队列满了由线程池新建非核心线程，不需要知道线程池的线程数
+        }
+
+        @Override
+        public boolean forceOffer(Runnable runnable) {
+            return offer(runnable);
+        }
+
+        @Override
+        public int offerAll(List<Runnable> runnables, int from) {
+            int count = 0;
+            while (from + count < runnables.size() && offer(runnables.get(from + count))) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 一个线程池的排队延迟控制，参考CoDel
+     * 任务开始执行时计算排队时间，低于目标就清除记录；第一次超过目标时记下窗口结束时间，
+     * 到窗口结束时一直没有低于目标的，说明队列不是短暂的突发而是一直排着，进入过载状态
+     * 多个线程同时更新，只用volatile，偶尔的竞争最多让状态晚一个任务切换
+     */
+    private static final class DelayControl4Util {
+
+        /**
+         * 排队时间第一次超过目标后，窗口的结束时间，0表示当前没有超过目标
+         */
+        private volatile long mFirstAboveNanos;
+        private volatile boolean isOverloaded;
+        /**
+         * 最近一个任务的排队时间
+         */
+        private volatile long mLastDelayNanos;
+
+        void markEnqueued(Runnable command) {
+            Runnable task = PriorityView4Util.unwrap(command);
+            if (task instanceof BaseTask) {
+                ((BaseTask<?>) task).mEnqueueNanos = System.nanoTime();
+            }
+        }
+
+        void onDequeue(Runnable command) {
+            Runnable task = PriorityView4Util.unwrap(command);
+            if (!(task instanceof BaseTask)) {
+                return;
+            }
+            BaseTask<?> baseTask = (BaseTask<?>) task;
+            long enqueueNanos = baseTask.mEnqueueNanos;
+            if (enqueueNanos == 0) {
+                // 开启控制之前提交的
+                return;
+            }
+            baseTask.mEnqueueNanos = 0;
+            long now = System.nanoTime();
+            long delay = now - enqueueNanos;
+            mLastDelayNanos = delay;
+            if (delay < sQueueDelayTargetNanos) {
+                mFirstAboveNanos = 0;
+                if (isOverloaded) {
+                    isOverloaded = false;
+                    Log.i(TAG, "Queue delay is back under target.");
+                }
+                return;
+            }
+            long firstAboveNanos = mFirstAboveNanos;
+            if (firstAboveNanos == 0) {
+                mFirstAboveNanos = now + sQueueDelayIntervalNanos;
+            } else if (now - firstAboveNanos >= 0 && !isOverloaded) {
+                isOverloaded = true;
+                Log.w(TAG, "Queue delay stayed above target for an interval, overloaded: "
+                        + TimeUnit.NANOSECONDS.toMillis(delay) + "ms.");
+            }
+        }
+
+        /**
+         * @param queuedCount 排队的任务数，队列已经排空时不再过载
+         */
+        boolean isOverloaded(int queuedCount) {
+            if (!isOverloaded) {
+                return false;
+            }
+            if (queuedCount <= 0) {
+                isOverloaded = false;
+                mFirstAboveNanos = 0;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 线程池过载，排队时间一直超过目标，任务被快速失败
+     */
+    public static final class OverloadException extends RejectedExecutionException {
+
+        private static final long serialVersionUID = 4817196542271053836L;
+        private final long mQueueDelayMillis;
+
+        OverloadException(long queueDelayMillis) {
+            super("The pool is overloaded, queue delay " + queueDelayMillis + "ms.");
+            mQueueDelayMillis = queueDelayMillis;
+        }
+
+        /**
+         * @return 失败时线程池最近的排队时间
+         */
+        public long getQueueDelayMillis() {
+            return mQueueDelayMillis;
+        }
+    }
+
+    /**
+     * 在value后面填充的AtomicLong，避免入队位置和出队位置落在同一个缓存行上互相干扰
+     */
+    @SuppressWarnings("unused")
+    static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1593418729823478112L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    /**
+     * 分段计数共用的分段数和线程散列，{@link TicketDispenser}和{@link StripedCounter}使用
+     */
+    static final class Stripe4Util {
+
+        /**
+         * 默认分段数：线程数的2倍向上取整为2的幂，减少不同线程落到同一个分段
+         */
+        static final int DEFAULT_COUNT = ceilPowerOfTwo(CPU_COUNT * 2);
+
+        private Stripe4Util() {
+        }
+
+        /**
+         * @return 不小于count的2的幂
+         */
+        static int ceilPowerOfTwo(int count) {
+            int power = 1;
+            while (power < count) {
+                power <<= 1;
+            }
+            return power;
+        }
+
+        /**
+         * @return 当前线程的散列，同一个线程总是相同，用来选择分段
+         */
+        static int threadHash() {
+            long id = Thread.currentThread().getId();
+            int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * 线程工厂类
+     */
+    static final class UtilsThreadFactory extends AtomicLong
+            implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+        private static final long serialVersionUID = -9209200509960368598L;
+        private final String poolName;
+        private final String namePrefix;
+        private final int priority;
+        private final boolean isDaemon;
+        /**
+         * 这个线程池存活的线程数、最多同时存活的线程数、因为预算不足没有新建的次数
+         */
+        private final AtomicInteger mLiveCount = new AtomicInteger();
+        private volatile int mPeakCount;
+        private final AtomicLong mDeniedCount = new AtomicLong();
+        /**
+         * 使用这个工厂的ThreadPoolExecutor，用来判断线程池里是否还有线程
+         */
+        private volatile ThreadPoolExecutor mPool;
+
+        UtilsThreadFactory(String prefix, int priority) {
+            this(prefix, priority, false);
+        }
+
+        UtilsThreadFactory(String prefix, int priority, boolean isDaemon) {
+            poolName = prefix + "-pool-" + POOL_NUMBER.getAndIncrement();
+            namePrefix = poolName + "-thread-";
+            this.priority = priority;
+            this.isDaemon = isDaemon;
+            THREAD_FACTORIES.add(this);
+        }
+
+        /**
+         * 从线程预算中申请一个线程，线程池已经没有线程时总是成功
+         *
+         * @param isForce 调用方已经确定没有线程在执行任务，不受预算限制
+         */
+        private boolean acquire(boolean isForce) {
+            for (; ; ) {
+                int live = LIVE_THREAD_COUNT.get();
+                if (!isForce && live >= sThreadBudget && hasThread()) {
+                    mDeniedCount.incrementAndGet();
+                    return false;
+                }
+                if (LIVE_THREAD_COUNT.compareAndSet(live, live + 1)) {
+                    int count = mLiveCount.incrementAndGet();
+                    if (count > mPeakCount) {
+                        mPeakCount = count;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 退出的线程在run()的finally里才归还预算，在这之前线程池已经在为它补充线程了，
+         * 所以ThreadPoolExecutor按线程池里的线程数判断，不按还没归还的预算判断
+         */
+        private boolean hasThread() {
+            ThreadPoolExecutor pool = mPool;
+            return pool != null ? pool.getPoolSize() > 0 : mLiveCount.get() > 0;
+        }
+
+        private void release() {
+            mLiveCount.decrementAndGet();
+            LIVE_THREAD_COUNT.decrementAndGet();
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return newThread(r, false);
+        }
+
+        /**
+         * @param isForce 是否不受预算限制，为true时一定返回线程
+         */
+        Thread newThread(@NonNull Runnable r, boolean isForce) {
+            if (!acquire(isForce)) {
+                // 返回null时线程池不新建线程，任务进入队列
+                return null;
+            }
+            Thread t = new Thread(r, namePrefix + getAndIncrement()) {
+                @Override
+                public void run() {
+                    try {
+                        // 调度优先级只能由线程自己设置
+                        setCurrentThreadPriority(priority, false);
+                        super.run();
+                    } catch (Throwable t) {
+                        Log.e("ThreadUtils", "Request threw uncaught throwable", t);
+                    } finally {
+                        release();
+                    }
+                }
+            };
+            t.setDaemon(isDaemon);
+            t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(Thread t, Throwable e) {
+                    System.out.println(e);
+                }
+            });
+            t.setPriority(priority);
+            return t;
+        }
+    }
+
+    public abstract static class BaseSimpleBaseTask<T> extends BaseTask<T> {
+
+        @Override
+        public void onCancel() {
+            Log.e("ThreadUtils", "onCancel: " + Thread.currentThread());
+        }
+
+        @Override
+        public void onFail(Throwable t) {
+            Log.e("ThreadUtils", "onFail: ", t);
+        }
+
+    }
+
+    public abstract static class BaseTask<T> implements Runnable {
+
+        /**
+         * 状态只通过CAS转换，不加锁：
+         * NEW -> RUNNING -> COMPLETING(onSuccess) / EXCEPTIONAL(onFail) / NEW(重试)
+         * NEW -> EXCEPTIONAL(被线程池拒绝，onFail) / CANCELLED(onCancel)
+         * RUNNING -> CANCELLED(不中断，onCancel) / INTERRUPTING -> INTERRUPTED(中断，onCancel) / INTERRUPTING -> TIMEOUT(onTimeout)
+         * 结束状态都只能从NEW或RUNNING通过CAS进入，只有一方能成功，所以结束回调只会有一次
+         */
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int EXCEPTIONAL = 2;
+        private static final int COMPLETING = 3;
+        private static final int CANCELLED = 4;
+        private static final int INTERRUPTED = 5;
+        private static final int TIMEOUT = 6;
+        /**
+         * 取消或超时的一方正在中断执行线程，执行线程要等它中断完才能离开，否则中断会留给线程池的下一个任务
+         */
+        private static final int INTERRUPTING = 7;
+
+        /**
+         * 循环任务每一次执行的状态，低3位是标记，高位是第几次
+         */
+        private static final long ITERATION_RUNNING = 1;
+        private static final long ITERATION_TIMEOUT = 2;
+        private static final long ITERATION_INTERRUPTING = 4;
+        private static final int ITERATION_SHIFT = 3;
+
+        /**
+         * 原子类的状态
+         */
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private volatile boolean isSchedule;
+        /**
+         * 共享变量 线程
+         */
+        private volatile Thread runner;
+
+        private long mTimeoutMillis;
+        private OnTimeoutListener mTimeoutListener;
+        /**
+         * 超时在共享定时线程池中的句柄，执行完时取消
+         */
+        private volatile Future<?> mTimeoutFuture;
+        /**
+         * 循环任务当前这一次的序号和ITERATION_*标记
+         */
+        private final AtomicLong mIterationState = new AtomicLong();
+
+        /**
+         * 循环任务是否固定延迟，周期或延迟
+         */
+        private boolean isFixedDelay;
+        private long mPeriodNanos;
+        /**
+         * 固定速率第一次的计划时间，第n次提交的计划时间是mFirstTickNanos + n * mPeriodNanos
+         */
+        private long mFirstTickNanos;
+        /**
+         * 固定速率已经开始(包括跳过)的提交次数，线程池积压时多次提交在排队，
+         * 每次开始按顺序取下一个计划时间，而不是用最近一次定时器触发的时间
+         */
+        private final AtomicLong mStartedTickCount = new AtomicLong();
+        /**
+         * 固定延迟下一次的计划开始时间
+         */
+        private volatile long mExpectedStartNanos;
+        /**
+         * 循环任务的漂移、抖动和错过的统计，在它自己的锁内读写
+         */
+        private ScheduleStats mScheduleStats;
+
+        private Executor deliver;
+
+        /**
+         * 延迟或循环任务在定时线程池中的句柄，任务结束时需要一并取消，否则定时器会一直触发
+         */
+        private volatile Future<?> mScheduledFuture;
+
+        /**
+         * 所属的任务组和在组里的下标，不属于任务组时为null
+         */
+        private volatile TaskScope<?> mScope;
+        private int mScopeIndex;
+
+        /**
+         * 通过executeAuto()提交时的路由，每次执行都要统计CPU时间
+         */
+        private volatile AutoRoute mAutoRoute;
+
+        /**
+         * 开启排队延迟控制时，加入线程池的时间，0表示没有记录
+         */
+        private long mEnqueueNanos;
+
+        /**
+         * 失败重试的策略，当前是第几次执行，第一次执行的开始时间
+         */
+        private RetryPolicy mRetryPolicy;
+        private volatile int mAttempt;
+        private long mFirstAttemptNanos;
+
+        /**
+         * 线程方法
+         * @return 实体
+         * @throws Throwable 异常
+         */
+        public abstract T doInBackground() throws Throwable;
+
+        /**
+         * 成功
+         * @param result 实体
+         */
+        public abstract void onSuccess(T result);
+
+        /**
+         * 取消
+         */
+        public abstract void onCancel();
+
+        /**
+         * 失败
+         * @param t 异常
+         */
+        public abstract void onFail(Throwable t);
+
+        @Override
+        public void run() {
+            // 判断是否循环计划内的
+            if (isSchedule) {
+                // 第一次从NEW变为RUNNING，之后每一次都要求还是RUNNING
+                if (!state.compareAndSet(NEW, RUNNING) && state.get() != RUNNING) {
+                    return;
+                }
+                final long expectedStartNanos = isFixedDelay ? mExpectedStartNanos
+                        : mFirstTickNanos + mStartedTickCount.getAndIncrement() * mPeriodNanos;
+                final long iteration = beginIteration(expectedStartNanos);
+                if (iteration < 0) {
+                    return;
+                }
+                if (mTimeoutListener != null) {
+                    scheduleTimeout(iteration);
+                }
+                runIteration();
+                if (isFixedDelay && state.get() == RUNNING) {
+                    scheduleNextRun(TASK_POOL_MAP.get(this), mPeriodNanos);
+                }
+                return;
+            }
+            // 判断当前状态如果是New，便赋值state=RUNNING，如果不是New，便返回
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                return;
+            }
+            // 获取当前线程
+            runner = Thread.currentThread();
+            if (mAttempt++ == 0) {
+                mFirstAttemptNanos = System.nanoTime();
+            }
+            if (mTimeoutListener != null) {
+                scheduleTimeout(0);
+            }
+            boolean isRetrying = false;
+            try {
+                // 执行doInBackground方法获取值
+                final T result = sTaskStatsEnabled || mAutoRoute != null ? doInBackgroundWithStats() : doInBackground();
+                // 判断当前状态如果是RUNNING，便赋值state=COMPLETING，不是RUNNING说明已经被取消或超时，由对方回调
+                if (!state.compareAndSet(RUNNING, COMPLETING)) {
+                    return;
+                }
+                notifyScope(true, result, null);
+                // 执行成功方法，getDeliver()已经封装了跳转ui线程
+                getDeliver().execute(() -> {
+                    onSuccess(result);
+                    onDone();
+                });
+            } catch (final Throwable throwable) {
+                // 还可以重试的话，回到NEW状态，等待退避时间后重新提交，不占用线程池的线程；被中断的不重试
+                long retryDelayMillis = mRetryPolicy == null || throwable instanceof InterruptedException ? -1
+                        : mRetryPolicy.getRetryDelayMillis(mAttempt, throwable,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mFirstAttemptNanos));
+                if (retryDelayMillis >= 0) {
+                    isRetrying = retry(retryDelayMillis);
+                    return;
+                }
+                // 判断当前状态如果是RUNNING，便赋值EXCEPTIONAL；被取消或超时中断的由对方回调
+                if (!state.compareAndSet(RUNNING, EXCEPTIONAL)) {
+                    return;
+                }
+                notifyScope(false, null, throwable);
+                // 执行成功方法，getDeliver()已经封装了跳转ui线程
+                getDeliver().execute(() -> {
+                    onFail(throwable);
+                    onDone();
+                });
+            } finally {
+                runner = null;
+                clearCancelInterrupt(awaitInterrupted());
+                if (!isRetrying) {
+                    exitScope();
+                }
+            }
+        }
+
+        /**
+         * 开始循环任务的一次执行，上一次还没执行完时跳过
+         *
+         * @param expectedStartNanos 这一次的计划开始时间
+         * @return 这是第几次，跳过时返回-1
+         */
+        private long beginIteration(final long expectedStartNanos) {
+            long current;
+            do {
+                current = mIterationState.get();
+                if ((current & ITERATION_RUNNING) != 0) {
+                    // 上一次还没执行完，跳过这一次，避免同一个任务在多个线程中堆积
+                    Log.w("ThreadUtils", "Scheduled task is still running, skip this iteration.");
+                    synchronized (mScheduleStats) {
+                        mScheduleStats.mSkippedCount++;
+                    }
+                    return -1;
+                }
+            } while (!mIterationState.compareAndSet(current,
+                    (((current >>> ITERATION_SHIFT) + 1) << ITERATION_SHIFT) | ITERATION_RUNNING));
+            synchronized (mScheduleStats) {
+                mScheduleStats.recordStart(System.nanoTime() - expectedStartNanos, mPeriodNanos);
+            }
+            // 每一次可能在不同的线程中执行
+            runner = Thread.currentThread();
+            return (current >>> ITERATION_SHIFT) + 1;
+        }
+
+        /**
+         * 结束循环任务的这一次执行，等取消或超时的一方中断完，再清掉中断标记
+         *
+         * @return 这一次是否超时了
+         */
+        private boolean endIteration() {
+            cancelTimeoutFuture();
+            runner = null;
+            long current;
+            for (; ; ) {
+                current = mIterationState.get();
+                if ((current & ITERATION_INTERRUPTING) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                if (mIterationState.compareAndSet(current, current & ~(ITERATION_RUNNING | ITERATION_TIMEOUT))) {
+                    break;
+                }
+            }
+            boolean isTimeout = (current & ITERATION_TIMEOUT) != 0;
+            int taskState = awaitInterrupted();
+            if (isTimeout) {
+                // 清除超时时的中断，不能影响线程池里的下一个任务
+                Thread.interrupted();
+            } else {
+                clearCancelInterrupt(taskState);
+            }
+            return isTimeout;
+        }
+
+        /**
+         * 取消或超时的一方正在中断时等它完成
+         *
+         * @return 中断完成后的状态
+         */
+        private int awaitInterrupted() {
+            int current;
+            while ((current = state.get()) == INTERRUPTING) {
+                Thread.yield();
+            }
+            return current;
+        }
+
+        /**
+         * 是被取消或超时中断的，清掉中断标记
+         */
+        private static void clearCancelInterrupt(int taskState) {
+            if (taskState == INTERRUPTED || taskState == TIMEOUT) {
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * 循环任务的一次执行，超时的这一次不回调onSuccess、onFail，循环继续
+         * 只有还是RUNNING时才回调onSuccess，取消之后不会再有onSuccess
+         */
+        private void runIteration() {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = sTaskStatsEnabled || mAutoRoute != null ? doInBackgroundWithStats() : doInBackground();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            if (endIteration() || state.get() != RUNNING) {
+                // 超时的已经回调过onTimeout，取消的由取消的一方回调
+                return;
+            }
+            if (failure == null) {
+                final T finalResult = result;
+                getDeliver().execute(() -> {
+                    // 在deliver中执行时可能已经被取消了
+                    if (state.get() == RUNNING) {
+                        onSuccess(finalResult);
+                    }
+                });
+                return;
+            }
+            // 如果出现异常了，判断当前状态如果是RUNNING，便赋值EXCEPTIONAL
+            if (!state.compareAndSet(RUNNING, EXCEPTIONAL)) {
+                return;
+            }
+            final Throwable throwable = failure;
+            getDeliver().execute(() -> {
+                onFail(throwable);
+                onDone();
+            });
+        }
+
+        /**
+         * 在共享的定时线程池中安排超时，不再为每个任务创建线程池
+         *
+         * @param iteration 循环任务的第几次，一次性任务为0
+         */
+        private void scheduleTimeout(final long iteration) {
+            mTimeoutFuture = mExecutorService.schedule(() -> {
+                final OnTimeoutListener listener = mTimeoutListener;
+                if (iteration == 0 ? timeout() : iterationTimeout(iteration)) {
+                    // 在deliver中回调，不能阻塞共享的定时线程
+                    getDeliver().execute(listener::onTimeout);
+                }
+            }, mTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelTimeoutFuture() {
+            Future<?> timeoutFuture = mTimeoutFuture;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+                mTimeoutFuture = null;
+            }
+        }
+
+        /**
+         * 循环任务的这一次超时了，中断它，循环继续
+         *
+         * @return 是否超时
+         */
+        private boolean iterationTimeout(final long iteration) {
+            long running = (iteration << ITERATION_SHIFT) | ITERATION_RUNNING;
+            if (state.get() != RUNNING || !mIterationState.compareAndSet(running,
+                    running | ITERATION_TIMEOUT | ITERATION_INTERRUPTING)) {
+                return false;
+            }
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            // 执行线程在这个标记清掉之前不会结束这一次
+            mIterationState.getAndAdd(-ITERATION_INTERRUPTING);
+            return true;
+        }
+
+        /**
+         * 回到NEW状态，delayMillis后在定时线程池里重新提交到原来的线程池
+         *
+         * @param delayMillis 退避时间
+         * @return 是否会重试，执行中被取消了返回false
+         */
+        private boolean retry(final long delayMillis) {
+            // 先清掉runner，回到NEW之后的取消不能再中断当前线程
+            runner = null;
+            if (!state.compareAndSet(RUNNING, NEW)) {
+                return false;
+            }
+            // 超时只针对一次执行，退避期间不能触发
+            cancelTimeoutFuture();
+            final ExecutorService pool = TASK_POOL_MAP.get(this);
+            if (pool == null) {
+                reject(new IllegalStateException("Retry without pool."));
+                return true;
+            }
+            setScheduledFuture(mExecutorService.schedule(() -> {
+                try {
+                    pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    reject(e);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS));
+            return true;
+        }
+
+        /**
+         * 执行doInBackground()并统计墙上时间、线程CPU时间和线程分配的内存
+         * 只有自动路由时只统计墙上时间和CPU时间，分配的内存在开启任务统计时才统计
+         * @return 实体
+         * @throws Throwable 异常
+         */
+        private T doInBackgroundWithStats() throws Throwable {
+            ThreadMeter meter = ThreadMeterHolder.METER;
+            boolean isTaskStats = sTaskStatsEnabled;
+            long wallStart = System.nanoTime();
+            long cpuStart = meter.currentThreadCpuNanos();
+            long allocatedStart = isTaskStats ? meter.currentThreadAllocatedBytes() : -1;
+            try {
+                return doInBackground();
+            } finally {
+                long cpuEnd = meter.currentThreadCpuNanos();
+                long wallNanos = System.nanoTime() - wallStart;
+                long cpuNanos = cpuStart < 0 || cpuEnd < 0 ? -1 : cpuEnd - cpuStart;
+                if (isTaskStats) {
+                    long allocatedEnd = meter.currentThreadAllocatedBytes();
+                    getOrCreateTaskStats(getClass()).record(wallNanos, cpuNanos,
+                            allocatedStart < 0 || allocatedEnd < 0 ? -1 : allocatedEnd - allocatedStart);
+                }
+                AutoRoute autoRoute = mAutoRoute;
+                if (autoRoute != null) {
+                    autoRoute.record(wallNanos, cpuNanos);
+                }
+            }
+        }
+
+        public void cancel() {
+            cancel(true);
+        }
+
+        public void cancel(boolean mayInterruptIfRunning) {
+            int previous;
+            boolean isInterrupt;
+            do {
+                previous = state.get();
+                if (previous > RUNNING) {
+                    return;
+                }
+                isInterrupt = mayInterruptIfRunning && previous == RUNNING;
+            } while (!state.compareAndSet(previous, isInterrupt ? INTERRUPTING : CANCELLED));
+            // 先停掉定时器，避免已取消的任务继续唤醒线程池
+            cancelScheduledFuture();
+            if (isInterrupt) {
+                interruptRunner(INTERRUPTED);
+            }
+            notifyScope(false, null, new CancellationException("Task was cancelled."));
+            if (previous == NEW) {
+                // 还没开始执行，之后也不会再执行了
+                exitScope();
+            }
+
+            getDeliver().execute(() -> {
+                onCancel();
+                onDone();
+            });
+        }
+
+        /**
+         * 任务被线程池拒绝，直接按失败处理
+         * @param t 异常
+         */
+        private void reject(final Throwable t) {
+            // 固定延迟的任务只在两次执行之间提交下一次，这时是RUNNING但没有在执行
+            if (!state.compareAndSet(NEW, EXCEPTIONAL)
+                    && !(isSchedule && isFixedDelay && state.compareAndSet(RUNNING, EXCEPTIONAL))) {
+                return;
+            }
+            notifyScope(false, null, t);
+            exitScope();
+            getDeliver().execute(() -> {
+                onFail(t);
+                onDone();
+            });
+        }
+
+        /**
+         * @return 是否超时
+         */
+        private boolean timeout() {
+            if (!state.compareAndSet(RUNNING, INTERRUPTING)) {
+                return false;
+            }
+            interruptRunner(TIMEOUT);
+            notifyScope(false, null, new TimeoutException("Task timed out after " + mTimeoutMillis + "ms."));
+            onDone();
+            return true;
+        }
+
+        /**
+         * 在INTERRUPTING状态下中断执行线程，再进入结束状态
+         * 执行线程离开前会等到不是INTERRUPTING，所以不会中断到线程池之后的任务
+         */
+        private void interruptRunner(int terminalState) {
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            state.set(terminalState);
+        }
+
+        /**
+         * 任务有了结果，通知所属的任务组，在状态变为结束状态的线程中调用
+         */
+        private void notifyScope(boolean isSuccess, Object result, Throwable t) {
+            TaskScope<?> scope = mScope;
+            if (scope != null) {
+                scope.onChildResult(mScopeIndex, isSuccess, result, t);
+            }
+        }
+
+        /**
+         * 任务已经不会再占用线程了，通知所属的任务组
+         */
+        private void exitScope() {
+            TaskScope<?> scope = mScope;
+            if (scope != null) {
+                scope.onChildExit(mScopeIndex);
+            }
+        }
+
+
+        public boolean isCanceled() {
+            return state.get() >= CANCELLED;
+        }
+
+        public boolean isDone() {
+            return state.get() > RUNNING;
+        }
+
+        public BaseTask<T> setDeliver(Executor deliver) {
+            this.deliver = deliver;
+            return this;
+        }
+
+        /**
+         * 超时后中断任务并回调listener，listener在deliver中回调
+         * 循环任务的超时针对每一次执行：这一次被中断并回调listener，循环继续
+         */
+        public BaseTask<T> setTimeout(final long timeoutMillis, final OnTimeoutListener listener) {
+            mTimeoutMillis = timeoutMillis;
+            mTimeoutListener = listener;
+            return this;
+        }
+
+        /**
+         * 失败后按策略重试，只有最后一次失败才回调onFail()
+         * Scheduled task doesn't support retry.
+         */
+        public BaseTask<T> setRetryPolicy(final RetryPolicy retryPolicy) {
+            mRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @return 当前是第几次执行，从1开始
+         */
+        public int getAttempt() {
+            return mAttempt;
+        }
+
+        private void setSchedule(boolean isSchedule, boolean isFixedDelay, long periodNanos) {
+            this.isSchedule = isSchedule;
+            this.isFixedDelay = isFixedDelay;
+            this.mPeriodNanos = periodNanos;
+            this.mScheduleStats = new ScheduleStats(periodNanos, isFixedDelay);
+        }
+
+        /**
+         * 固定延迟：delayNanos后提交下一次
+         */
+        private void scheduleNextRun(final ExecutorService pool, final long delayNanos) {
+            if (pool == null) {
+                return;
+            }
+            mExpectedStartNanos = System.nanoTime() + delayNanos;
+            setScheduledFuture(mExecutorService.schedule(() -> {
+                try {
+                    if (pool.isShutdown()) {
+                        // 关闭的线程池会直接丢弃任务
+                        throw new RejectedExecutionException("Pool is shut down.");
+                    }
+                    pool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    Log.e("ThreadUtils", "Scheduled task rejected.", e);
+                    // 不再有下一次，按失败结束，否则任务一直是RUNNING并留在TASK_POOL_MAP中
+                    reject(e);
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS));
+        }
+
+        /**
+         * 循环任务的漂移、抖动和错过的统计，不是循环任务时返回null
+         *
+         * @return 统计的快照
+         */
+        @Nullable
+        public ScheduleStats getScheduleStats() {
+            ScheduleStats scheduleStats = mScheduleStats;
+            if (scheduleStats == null) {
+                return null;
+            }
+            synchronized (scheduleStats) {
+                return new ScheduleStats(scheduleStats);
+            }
+        }
+
+        private void setScheduledFuture(Future<?> scheduledFuture) {
+            mScheduledFuture = scheduledFuture;
+            // 如果在赋值之前任务已经结束(例如已被取消)，这里补一次取消
+            if (isDone()) {
+                cancelScheduledFuture();
+            }
+        }
+
+        private void cancelScheduledFuture() {
+            Future<?> scheduledFuture = mScheduledFuture;
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+                mScheduledFuture = null;
+            }
+        }
+
+        private Executor getDeliver() {
+            if (deliver == null) {
+                return getGlobalDeliver();
+            }
+            return deliver;
+        }
+
+        @CallSuper
+        protected void onDone() {
+            TASK_POOL_MAP.remove(this);
+            cancelScheduledFuture();
+            cancelTimeoutFuture();
+        }
+
+        public interface OnTimeoutListener {
+            /**
+             * 超时
+             */
+            void onTimeout();
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return super.equals(obj);
+        }
+    }
+
+    /**
+     * 线程预算的使用情况
+     */
+    public static final class ThreadUsageReport {
+
+        private final int mBudget;
+        private final int mLiveCount;
+        private final List<PoolThreadUsage> mPools = new ArrayList<>();
+
+        private ThreadUsageReport(final int budget, final int liveCount, final List<UtilsThreadFactory> factories) {
+            mBudget = budget;
+            mLiveCount = liveCount;
+            for (UtilsThreadFactory factory : factories) {
+                mPools.add(new PoolThreadUsage(factory.poolName, factory.mLiveCount.get(),
+                        factory.mPeakCount, factory.mDeniedCount.get()));
+            }
+        }
+
+        /**
+         * @return 线程预算，Integer.MAX_VALUE表示不限制
+         */
+        public int getBudget() {
+            return mBudget;
+        }
+
+        /**
+         * @return 所有线程池存活的线程数
+         */
+        public int getLiveCount() {
+            return mLiveCount;
+        }
+
+        public List<PoolThreadUsage> getPools() {
+            return mPools;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("threads ").append(mLiveCount).append('/')
+                    .append(mBudget == Integer.MAX_VALUE ? "unlimited" : String.valueOf(mBudget));
+            for (PoolThreadUsage pool : mPools) {
+                builder.append('\n').append(pool);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 一个线程池的线程使用情况
+     */
+    public static final class PoolThreadUsage {
+
+        private final String mName;
+        private final int mLiveCount;
+        private final int mPeakCount;
+        private final long mDeniedCount;
+
+        private PoolThreadUsage(String name, int liveCount, int peakCount, long deniedCount) {
+            mName = name;
+            mLiveCount = liveCount;
+            mPeakCount = peakCount;
+            mDeniedCount = deniedCount;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getLiveCount() {
+            return mLiveCount;
+        }
+
+        public int getPeakCount() {
+            return mPeakCount;
+        }
+
+        /**
+         * @return 因为预算不足没有新建线程的次数
+         */
+        public long getDeniedCount() {
+            return mDeniedCount;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": live=" + mLiveCount + ", peak=" + mPeakCount + ", denied=" + mDeniedCount;
+        }
+    }
+
+    /**
+     * 循环任务的调度统计
+     * 漂移：每一次实际开始时间比计划开始时间晚多少，包括定时器的延迟和在线程池队列中等待的时间；
+     * 固定速率的计划时间是 首次时间 + n * period，固定延迟是 上一次结束时间 + delay
+     * 抖动：相邻两次漂移之差的平均值
+     * 错过：漂移超过一个周期的次数，加上因为上一次还没执行完而跳过的次数
+     */
+    public static final class ScheduleStats {
+
+        private final long mPeriodNanos;
+        private final boolean isFixedDelay;
+        private long mCount;
+        private long mDriftSumNanos;
+        private long mMaxDriftNanos;
+        private long mJitterSumNanos;
+        private long mLastDriftNanos;
+        private long mLateCount;
+        private long mSkippedCount;
+
+        private ScheduleStats(final long periodNanos, final boolean isFixedDelay) {
+            mPeriodNanos = periodNanos;
+            this.isFixedDelay = isFixedDelay;
+        }
+
+        private ScheduleStats(final ScheduleStats other) {
+            mPeriodNanos = other.mPeriodNanos;
+            isFixedDelay = other.isFixedDelay;
+            mCount = other.mCount;
+            mDriftSumNanos = other.mDriftSumNanos;
+            mMaxDriftNanos = other.mMaxDriftNanos;
+            mJitterSumNanos = other.mJitterSumNanos;
+            mLastDriftNanos = other.mLastDriftNanos;
+            mLateCount = other.mLateCount;
+            mSkippedCount = other.mSkippedCount;
+        }
+
+        private void recordStart(final long driftNanos, final long periodNanos) {
+            long drift = Math.max(0, driftNanos);
+            if (mCount > 0) {
+                mJitterSumNanos += Math.abs(drift - mLastDriftNanos);
+            }
+            mCount++;
+            mDriftSumNanos += drift;
+            mLastDriftNanos = drift;
+            if (drift > mMaxDriftNanos) {
+                mMaxDriftNanos = drift;
+            }
+            if (drift >= periodNanos) {
+                mLateCount++;
+            }
+        }
+
+        public boolean isFixedDelay() {
+            return isFixedDelay;
+        }
+
+        public long getPeriodMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mPeriodNanos);
+        }
+
+        /**
+         * @return 已经开始执行的次数
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getMeanDriftMillis() {
+            return mCount == 0 ? 0 : mDriftSumNanos / 1e6 / mCount;
+        }
+
+        public double getMaxDriftMillis() {
+            return mMaxDriftNanos / 1e6;
+        }
+
+        public double getJitterMillis() {
+            return mCount <= 1 ? 0 : mJitterSumNanos / 1e6 / (mCount - 1);
+        }
+
+        /**
+         * @return 漂移超过一个周期的次数
+         */
+        public long getLateCount() {
+            return mLateCount;
+        }
+
+        /**
+         * @return 上一次还没执行完而跳过的次数，只有固定速率会跳过
+         */
+        public long getSkippedCount() {
+            return mSkippedCount;
+        }
+
+        /**
+         * @return 错过计划的次数
+         */
+        public long getMissedCount() {
+            return mLateCount + mSkippedCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s %dms: count=%d, drift avg=%.2fms max=%.2fms, jitter=%.2fms, missed=%d (late=%d, skipped=%d)",
+                    isFixedDelay ? "fixedDelay" : "fixedRate", getPeriodMillis(), mCount,
+                    getMeanDriftMillis(), getMaxDriftMillis(), getJitterMillis(),
+                    getMissedCount(), mLateCount, mSkippedCount);
+        }
+    }
+
+    /**
+     * 失败重试的策略：最大执行次数、指数退避、随机抖动、可重试的异常、总期限
+     * 第n次重试前等待 min(initialDelay * multiplier^(n-1), maxDelay)，再按jitter随机减少，
+     * 避免大量任务在同一时刻一起重试
+     */
+    public static final class RetryPolicy {
+
+        private final int mMaxAttempts;
+        private long mInitialDelayMillis = 100;
+        private long mMaxDelayMillis = 10000;
+        private double mMultiplier = 2;
+        private double mJitter = 0.5;
+        private long mDeadlineMillis;
+        private RetryPredicate mRetryPredicate;
+
+        /**
+         * @param maxAttempts 最多执行几次，包括第一次
+         */
+        public RetryPolicy(@IntRange(from = 1) final int maxAttempts) {
+            mMaxAttempts = maxAttempts;
+        }
+
+        /**
+         * 指数退避，默认100ms开始，每次乘以2，最多10s
+         *
+         * @param initialDelayMillis 第一次重试前的等待
+         * @param maxDelayMillis     最大等待
+         * @param multiplier         每次乘以的倍数
+         */
+        public RetryPolicy setBackoff(@IntRange(from = 0) final long initialDelayMillis,
+                                      @IntRange(from = 0) final long maxDelayMillis,
+                                      final double multiplier) {
+            mInitialDelayMillis = initialDelayMillis;
+            mMaxDelayMillis = maxDelayMillis;
+            mMultiplier = Math.max(1, multiplier);
+            return this;
+        }
+
+        /**
+         * 随机抖动，等待时间在 [delay * (1 - jitter), delay] 之间，默认0.5，1表示完全随机
+         *
+         * @param jitter 0到1
+         */
+        public RetryPolicy setJitter(final double jitter) {
+            mJitter = Math.max(0, Math.min(1, jitter));
+            return this;
+        }
+
+        /**
+         * 从第一次执行开始的总期限，下一次重试会超过期限时不再重试，0表示不限时
+         *
+         * @param deadlineMillis 毫秒
+         */
+        public RetryPolicy setDeadline(@IntRange(from = 0) final long deadlineMillis) {
+            mDeadlineMillis = deadlineMillis;
+            return this;
+        }
+
+        /**
+         * 哪些异常可以重试，默认除了Error都重试
+         *
+         * @param retryPredicate 判断
+         */
+        public RetryPolicy setRetryOn(final RetryPredicate retryPredicate) {
+            mRetryPredicate = retryPredicate;
+            return this;
+        }
+
+        /**
+         * @param attempt        已经执行了几次
+         * @param throwable      这次失败的异常
+         * @param elapsedMillis  从第一次执行到现在的时间
+         * @return 下次重试前的等待，不再重试时返回-1
+         */
+        private long getRetryDelayMillis(final int attempt, final Throwable throwable, final long elapsedMillis) {
+            if (attempt >= mMaxAttempts) {
+                return -1;
+            }
+            boolean isRetryable = mRetryPredicate == null
+                    ? !(throwable instanceof Error) : mRetryPredicate.isRetryable(throwable);
+            if (!isRetryable) {
+                return -1;
+            }
+            double delay = Math.min(mInitialDelayMillis * Math.pow(mMultiplier, attempt - 1), mMaxDelayMillis);
+            delay -= delay * mJitter * ThreadLocalRandom.current().nextDouble();
+            long delayMillis = (long) delay;
+            if (mDeadlineMillis > 0 && elapsedMillis + delayMillis >= mDeadlineMillis) {
+                return -1;
+            }
+            return delayMillis;
+        }
+    }
+
+    /**
+     * 对冲策略和统计
+     * 对冲延迟可以固定，也可以取最近成功请求延迟的百分位(默认p95)，样本不足时使用固定延迟；
+     * 预算按令牌桶计算：每个请求增加ratio个令牌，每次对冲消耗1个，最多存burst个，额外负载不会超过ratio
+     */
+    public static final class HedgePolicy {
+
+        private static final int SAMPLE_SIZE = 256;
+        private static final int MIN_SAMPLES = 20;
+        /**
+         * 每记录多少个样本重新计算一次百分位延迟
+         */
+        private static final int RECALCULATE_INTERVAL = 16;
+        /**
+         * 令牌按千分之一保存
+         */
+        private static final long TOKEN = 1000;
+
+        private final String mKey;
+        private volatile long mDelayMillis = 100;
+        private volatile double mPercentile = 0.95;
+        private volatile long mTokensPerRequest = TOKEN / 10;
+        private volatile long mMaxTokens = 10 * TOKEN;
+
+        private final long[] mSamples = new long[SAMPLE_SIZE];
+        private int mSampleCount;
+        private volatile long mPercentileDelayMillis = -1;
+
+        private final AtomicLong mTokens = new AtomicLong();
+        private final AtomicLong mRequestCount = new AtomicLong();
+        private final AtomicLong mHedgeCount = new AtomicLong();
+        private final AtomicLong mHedgeWinCount = new AtomicLong();
+        private final AtomicLong mBudgetExhaustedCount = new AtomicLong();
+
+        private HedgePolicy(final String key) {
+            mKey = key;
+        }
+
+        /**
+         * 固定对冲延迟，不再按百分位计算
+         *
+         * @param delayMillis 毫秒
+         */
+        public HedgePolicy setFixedDelay(@IntRange(from = 0) final long delayMillis) {
+            mDelayMillis = delayMillis;
+            mPercentile = 0;
+            return this;
+        }
+
+        /**
+         * 按最近成功请求延迟的百分位对冲
+         *
+         * @param percentile         百分位，例如0.95
+         * @param initialDelayMillis 样本不足时的延迟
+         */
+        public HedgePolicy setPercentileDelay(final double percentile, @IntRange(from = 0) final long initialDelayMillis) {
+            mPercentile = Math.max(0.5, Math.min(0.999, percentile));
+            mDelayMillis = initialDelayMillis;
+            return this;
+        }
+
+        /**
+         * 对冲预算
+         *
+         * @param ratio 对冲请求最多占总请求的比例，例如0.1
+         * @param burst 最多可以连续对冲的次数
+         */
+        public HedgePolicy setBudget(final double ratio, @IntRange(from = 1) final int burst) {
+            mTokensPerRequest = (long) (Math.max(0, Math.min(1, ratio)) * TOKEN);
+            mMaxTokens = burst * TOKEN;
+            return this;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * @return 当前的对冲延迟
+         */
+        public long getHedgeDelayMillis() {
+            long percentileDelay = mPercentileDelayMillis;
+            return mPercentile > 0 && percentileDelay >= 0 ? percentileDelay : mDelayMillis;
+        }
+
+        public long getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        /**
+         * @return 发起对冲的次数
+         */
+        public long getHedgeCount() {
+            return mHedgeCount.get();
+        }
+
+        /**
+         * @return 对冲请求比原请求先完成的次数
+         */
+        public long getHedgeWinCount() {
+            return mHedgeWinCount.get();
+        }
+
+        /**
+         * @return 因为预算不足没有对冲的次数
+         */
+        public long getBudgetExhaustedCount() {
+            return mBudgetExhaustedCount.get();
+        }
+
+        private void onRequest() {
+            mRequestCount.incrementAndGet();
+            for (; ; ) {
+                long tokens = mTokens.get();
+                long next = Math.min(mMaxTokens, tokens + mTokensPerRequest);
+                if (next == tokens || mTokens.compareAndSet(tokens, next)) {
+                    return;
+                }
+            }
+        }
+
+        private boolean tryAcquireHedge() {
+            for (; ; ) {
+                long tokens = mTokens.get();
+                if (tokens < TOKEN) {
+                    mBudgetExhaustedCount.incrementAndGet();
+                    return false;
+                }
+                if (mTokens.compareAndSet(tokens, tokens - TOKEN)) {
+                    mHedgeCount.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        private void record(final long latencyMillis) {
+            long[] sorted = null;
+            int count;
+            synchronized (mSamples) {
+                mSamples[mSampleCount % SAMPLE_SIZE] = latencyMillis;
+                count = ++mSampleCount;
+                if (count >= MIN_SAMPLES && count % RECALCULATE_INTERVAL == 0) {
+                    sorted = Arrays.copyOf(mSamples, Math.min(count, SAMPLE_SIZE));
+                }
+            }
+            if (sorted != null) {
+                // 排序放在锁外面
+                Arrays.sort(sorted);
+                mPercentileDelayMillis = sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * mPercentile))];
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "HedgePolicy{" + mKey
+                    + ", delay=" + getHedgeDelayMillis() + "ms"
+                    + ", requests=" + getRequestCount()
+                    + ", hedges=" + getHedgeCount()
+                    + ", hedgeWins=" + getHedgeWinCount()
+                    + ", budgetExhausted=" + getBudgetExhaustedCount()
+                    + '}';
+        }
+    }
+
+    /**
+     * 对冲执行的一次请求，结果通过任务组回调，本身不回调
+     */
+    private static final class HedgedTask<T> extends BaseTask<T> {
+
+        private final Callable<T> mCallable;
+        private final HedgePolicy mPolicy;
+        /**
+         * 对冲请求对应的原请求，原请求为null
+         */
+        private final HedgedTask<T> mPrimary;
+
+        HedgedTask(Callable<T> callable, HedgePolicy policy, HedgedTask<T> primary) {
+            mCallable = callable;
+            mPolicy = policy;
+            mPrimary = primary;
+        }
+
+        @Override
+        public T doInBackground() throws Throwable {
+            long start = System.nanoTime();
+            T result = mCallable.call();
+            mPolicy.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (mPrimary != null && !mPrimary.isDone()) {
+                mPolicy.mHedgeWinCount.incrementAndGet();
+            }
+            return result;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+        }
+
+        @Override
+        public void onCancel() {
+        }
+
+        @Override
+        public void onFail(Throwable t) {
+        }
+    }
+
+    /**
+     * 判断异常是否可以重试
+     */
+    public interface RetryPredicate {
+        /**
+         * @param t 异常
+         * @return 是否可以重试
+         */
+        boolean isRetryable(Throwable t);
+    }
+
+    /**
+     * 任务组的回调，在deliver中回调
+     *
+     * @param <R> 结果类型
+     */
+    public interface OnScopeListener<R> {
+        /**
+         * 成功
+         *
+         * @param result 结果
+         */
+        void onSuccess(R result);
+
+        /**
+         * 失败，超过期限时是TimeoutException
+         *
+         * @param t 异常
+         */
+        void onFail(Throwable t);
+
+        /**
+         * 任务组被取消
+         */
+        void onCancel();
+    }
+
+    /**
+     * 一组同时执行的任务，由{@link #invokeAll}、{@link #invokeAny}创建
+     * 结果确定后(全部成功、第一个成功、失败、超时或者取消)马上取消还没结束的任务，正在执行的任务会被中断，
+     * 等所有任务都退出doInBackground()之后才回调，所以回调时组里的任务都不会再占用线程
+     * 任务如果不响应中断，回调会一直等到它执行完
+     *
+     * @param <R> 结果类型
+     */
+    public static final class TaskScope<R> {
+
+        private static final int MODE_ALL = 0;
+        private static final int MODE_ANY = 1;
+
+        private static final int UNDECIDED = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAIL = 2;
+        private static final int CANCEL = 3;
+
+        private final int mMode;
+        private final List<BaseTask<?>> mTasks;
+        private final OnScopeListener<R> mListener;
+        private final Object[] mResults;
+        /**
+         * 每个任务是否已经有了结果、是否已经退出，保证只处理一次
+         */
+        private final AtomicIntegerArray mReported;
+        private final AtomicIntegerArray mExited;
+        /**
+         * ALL：还需要多少个成功；ANY：还剩多少个可以失败
+         */
+        private final AtomicInteger mUndecided;
+        /**
+         * 还没退出的任务数加上结果本身，为0时回调
+         */
+        private final AtomicInteger mAlive;
+        private final AtomicInteger mOutcome = new AtomicInteger(UNDECIDED);
+        private volatile Object mResult;
+        private volatile Throwable mFailure;
+        private volatile Future<?> mDeadline;
+
+        private TaskScope(final int mode, final List<? extends BaseTask<?>> tasks, final OnScopeListener<R> listener) {
+            mMode = mode;
+            mTasks = new ArrayList<BaseTask<?>>(tasks);
+            mListener = listener;
+            int size = mTasks.size();
+            mResults = new Object[size];
+            mReported = new AtomicIntegerArray(size);
+            mExited = new AtomicIntegerArray(size);
+            mUndecided = new AtomicInteger(size);
+            mAlive = new AtomicInteger(size + 1);
+            for (int i = 0; i < size; i++) {
+                BaseTask<?> task = mTasks.get(i);
+                if (task.mScope != null || task.state.get() != BaseTask.NEW || TASK_POOL_MAP.containsKey(task)) {
+                    throw new IllegalStateException("Task can only be executed once.");
+                }
+            }
+        }
+
+        private void fork(final ExecutorService pool, final long timeout, final TimeUnit unit) {
+            attach();
+            if (mTasks.isEmpty()) {
+                decide(SUCCESS, new ArrayList<>(), null);
+                return;
+            }
+            if (timeout > 0) {
+                mDeadline = mExecutorService.schedule(() -> decide(FAIL, null,
+                        new TimeoutException("Scope timed out after " + unit.toMillis(timeout) + "ms.")),
+                        timeout, unit);
+            }
+            for (BaseTask<?> task : mTasks) {
+                if (mOutcome.get() != UNDECIDED) {
+                    // 已经有结果了，剩下的任务不需要再提交
+                    task.cancel(false);
+                    continue;
+                }
+                if (pool.isShutdown()) {
+                    // 关闭的线程池会直接丢弃任务，子任务既不会执行也不会退出，当作被拒绝
+                    task.reject(new RejectedExecutionException("Pool is shut down."));
+                    continue;
+                }
+                execute(pool, task);
+            }
+        }
+
+        private void attach() {
+            for (int i = 0; i < mTasks.size(); i++) {
+                BaseTask<?> task = mTasks.get(i);
+                task.mScopeIndex = i;
+                task.mScope = this;
+            }
+        }
+
+        /**
+         * 不再执行下标为index的任务，当作失败但不记录异常
+         */
+        private void skip(final int index) {
+            onChildResult(index, false, null, null);
+            onChildExit(index);
+        }
+
+        /**
+         * 取消组里所有任务，回调onCancel()
+         */
+        public void cancel() {
+            decide(CANCEL, null, null);
+        }
+
+        /**
+         * @return 结果是否已经确定
+         */
+        public boolean isDone() {
+            return mOutcome.get() != UNDECIDED;
+        }
+
+        private void onChildResult(final int index, final boolean isSuccess, final Object result, final Throwable t) {
+            if (!mReported.compareAndSet(index, 0, 1) || mOutcome.get() != UNDECIDED) {
+                return;
+            }
+            if (mMode == MODE_ALL) {
+                if (!isSuccess) {
+                    decide(FAIL, null, t);
+                    return;
+                }
+                mResults[index] = result;
+                if (mUndecided.decrementAndGet() == 0) {
+                    List<Object> results = new ArrayList<>(mResults.length);
+                    Collections.addAll(results, mResults);
+                    decide(SUCCESS, results, null);
+                }
             } else {
-                TimerTask timerTask = new TimerTask() {
-                    @Override
-                    public void run() {
-                        pool.execute(baseTask);
+                if (isSuccess) {
+                    decide(SUCCESS, result, null);
+                    return;
+                }
+                synchronized (this) {
+                    if (mFailure == null) {
+                        mFailure = t;
+                    } else if (t != null && t != mFailure) {
+                        t.addSuppressed(mFailure);
+                        mFailure = t;
                     }
-                };
-                mExecutorService.schedule(timerTask, unit.toMillis(delay), TimeUnit.MILLISECONDS);
-            }
-        } else {
-            baseTask.setSchedule(true);
-            TimerTask timerTask = new TimerTask() {
-                @Override
-                public void run() {
-                    pool.execute(baseTask);
                 }
-            };
-            mExecutorService.scheduleAtFixedRate(timerTask, unit.toMillis(delay), unit.toMillis(period), TimeUnit.MILLISECONDS);
+                if (mUndecided.decrementAndGet() == 0) {
+                    decide(FAIL, null, mFailure);
+                }
+            }
         }
-    }
 
-    private static ExecutorService getPoolByTypeAndPriority(final int type) {
-        return getPoolByTypeAndPriority(type, Thread.NORM_PRIORITY);
+        private void onChildExit(final int index) {
+            if (!mExited.compareAndSet(index, 0, 1)) {
+                return;
+            }
+            BaseTask<?> task = mTasks.get(index);
+            if (!task.isDone()) {
+                // 被中断后没有进入结束状态就退出了
+                onChildResult(index, false, null, new InterruptedException("Task exited without result."));
+            }
+            if (mAlive.decrementAndGet() == 0) {
+                deliver();
+            }
+        }
+
+        private void decide(final int outcome, final Object result, final Throwable t) {
+            if (!mOutcome.compareAndSet(UNDECIDED, outcome)) {
+                return;
+            }
+            mResult = result;
+            mFailure = t;
+            Future<?> deadline = mDeadline;
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            // 结果已经确定，中断还在执行的任务，马上让出线程
+            for (BaseTask<?> task : mTasks) {
+                task.cancel(true);
+            }
+            if (mAlive.decrementAndGet() == 0) {
+                deliver();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver() {
+            final int outcome = mOutcome.get();
+            getGlobalDeliver().execute(() -> {
+                if (outcome == SUCCESS) {
+                    mListener.onSuccess((R) mResult);
+                } else if (outcome == FAIL) {
+                    mListener.onFail(mFailure);
+                } else {
+                    mListener.onCancel();
+                }
+            });
+        }
     }
 
     /**
-     * 根据类型获取线程池
-     * @param type 类型
-     * @param priority 优先级
-     * @return 线程池
+     * 一个任务类的统计
      */
-    private static ExecutorService getPoolByTypeAndPriority(final int type, final int priority) {
-        // 同步map安全，防止线程不安全创建多个 Map线程池
-        synchronized (TYPE_PRIORITY_POOLS) {
-            ExecutorService pool;
-            // 通过类型获取 Map线程池
-            Map<Integer, ExecutorService> priorityPools = TYPE_PRIORITY_POOLS.get(type);
-            if (priorityPools == null) {
-                // 如果没有 Map线程池 则新建一个
-                priorityPools = new ConcurrentHashMap<>();
-                pool = ThreadPoolExecutor4Util.createPool(type, priority);
-                // 加入线程池
-                priorityPools.put(priority, pool);
-                // 新建后加入 Map线程池
-                TYPE_PRIORITY_POOLS.put(type, priorityPools);
-            } else {
-                // 根据线程池优先级获取线程池
-                pool = priorityPools.get(priority);
-                // 如果没有该线程池，则创建新的线程池
-                if (pool == null) {
-                    pool = ThreadPoolExecutor4Util.createPool(type, priority);
-                    priorityPools.put(priority, pool);
-                }
+    public static final class TaskStats {
+
+        private final Class<?> mTaskClass;
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mWallNanos = new AtomicLong();
+        private final AtomicLong mCpuNanos = new AtomicLong();
+        private final AtomicLong mAllocatedBytes = new AtomicLong();
+
+        TaskStats(Class<?> taskClass) {
+            mTaskClass = taskClass;
+        }
+
+        /**
+         * 记录一次执行
+         * @param wallNanos 墙上时间
+         * @param cpuNanos 线程CPU时间，不支持时为-1
+         * @param allocatedBytes 线程分配的内存，不支持时为-1
+         */
+        void record(long wallNanos, long cpuNanos, long allocatedBytes) {
+            mCount.incrementAndGet();
+            mWallNanos.addAndGet(wallNanos);
+            if (cpuNanos > 0) {
+                mCpuNanos.addAndGet(cpuNanos);
             }
-            return pool;
+            if (allocatedBytes > 0) {
+                mAllocatedBytes.addAndGet(allocatedBytes);
+            }
+        }
+
+        public Class<?> getTaskClass() {
+            return mTaskClass;
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getWallNanos() {
+            return mWallNanos.get();
+        }
+
+        public long getCpuNanos() {
+            return mCpuNanos.get();
+        }
+
+        public long getAllocatedBytes() {
+            return mAllocatedBytes.get();
+        }
+
+        /**
+         * @return CPU时间占墙上时间的比例，0到1，越低说明阻塞越多
+         */
+        public float getCpuRatio() {
+            long wallNanos = mWallNanos.get();
+            if (wallNanos <= 0) {
+                return 0f;
+            }
+            return Math.min(1f, (float) mCpuNanos.get() / wallNanos);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            long count = Math.max(1, getCount());
+            return mTaskClass.getName() + "{count=" + getCount()
+                    + ", avgWallMicros=" + getWallNanos() / count / 1000
+                    + ", avgCpuMicros=" + getCpuNanos() / count / 1000
+                    + ", avgAllocatedBytes=" + getAllocatedBytes() / count
+                    + ", cpuRatio=" + getCpuRatio() + "}";
         }
     }
 
     /**
-     * 继承于ThreadPoolExecutor
+     * executeAuto()中一个任务类的路由，CPU时间占墙上时间的比例按指数移动平均统计，最近的执行权重更大
+     * 比例高于CPU_ENTER_RATIO改到CPU线程池，低于CPU_EXIT_RATIO改回IO线程池，中间保持不变，避免来回切换
      */
-    static final class ThreadPoolExecutor4Util extends ThreadPoolExecutor {
+    public static final class AutoRoute {
+
+        private static final float ALPHA = 0.2f;
+        private static final float CPU_ENTER_RATIO = 0.7f;
+        private static final float CPU_EXIT_RATIO = 0.4f;
+
+        private final Class<?> mTaskClass;
+        private volatile boolean isCpuBound;
+        private float mCpuRatio;
+        private long mSampleCount;
+        private long mSwitchCount;
+        private final AtomicLong mIoCount = new AtomicLong();
+        private final AtomicLong mCpuCount = new AtomicLong();
+
+        AutoRoute(Class<?> taskClass) {
+            mTaskClass = taskClass;
+        }
 
         /**
-         * 创建线程池
-         * @param type 类型
-         * @param priority 优先级
-         * @return 线程池
+         * 选择这次提交的线程池并计数
+         *
+         * @return 是否使用CPU线程池
          */
-        private static ExecutorService createPool(final int type, final int priority) {
-            switch (type) {
-                case TYPE_SINGLE:
-                    // 创建 核心线程数为1，线程池最大线程数量为1，非核心线程空闲存活时长为0
-                    // 只创建一个线程确保 顺序执行的场景，并且只有一个线程在执行
-                    return new ThreadPoolExecutor4Util(1, 1,
-                            0L, TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("single", priority)
-                    );
-                case TYPE_CACHED:
-                    // 创建 核心线程数为0，线程池最大线程数量为128，非核心线程空闲存活时长为60秒
-                    // 线程数为128个一般用于处理执行时间比较短的任务
-                    return new ThreadPoolExecutor4Util(0, 128,
-                            60L, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(true),
-                            new UtilsThreadFactory("cached", priority)
-                    );
-                case TYPE_IO:
-                    // 创建 核心线程数为可计算资源*2+1,线程池最大线程数量为可计算资源*2+1，非核心线程空闲存活时长为30秒
-                    return new ThreadPoolExecutor4Util(2 * CPU_COUNT + 1, 2 * CPU_COUNT + 1,
-                            30, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("io", priority)
-                    );
-                case TYPE_CPU:
-                    // 创建 核心线程数为可计算资源+1,线程池最大线程数量为可计算资源*2+1，非核心线程空闲存活时长为30秒
-                    return new ThreadPoolExecutor4Util(CPU_COUNT + 1, 2 * CPU_COUNT + 1,
-                            30, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(true),
-                            new UtilsThreadFactory("cpu", priority)
-                    );
-                default:
-                    // 创建 核心线程数、线程池最大数量为自定义的，空闲存活时长为0
-                    return new ThreadPoolExecutor4Util(type, type,
-                            0L, TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("fixed(" + type + ")", priority)
-                    );
+        boolean route() {
+            boolean isCpu = isCpuBound;
+            (isCpu ? mCpuCount : mIoCount).incrementAndGet();
+            return isCpu;
+        }
+
+        /**
+         * 记录一次执行，更新比例和路由
+         *
+         * @param wallNanos 墙上时间
+         * @param cpuNanos  线程CPU时间，不支持时为-1，不支持时一直使用IO线程池
+         */
+        synchronized void record(long wallNanos, long cpuNanos) {
+            if (cpuNanos < 0 || wallNanos <= 0) {
+                return;
+            }
+            float ratio = Math.min(1f, (float) cpuNanos / wallNanos);
+            mCpuRatio = mSampleCount++ == 0 ? ratio : mCpuRatio + ALPHA * (ratio - mCpuRatio);
+            boolean isCpu = isCpuBound ? mCpuRatio >= CPU_EXIT_RATIO : mCpuRatio > CPU_ENTER_RATIO;
+            if (isCpu != isCpuBound) {
+                isCpuBound = isCpu;
+                mSwitchCount++;
+                Log.d(TAG, mTaskClass.getName() + " routed to " + (isCpu ? "cpu" : "io") + " pool, cpuRatio=" + mCpuRatio);
             }
         }
 
+        public Class<?> getTaskClass() {
+            return mTaskClass;
+        }
+
         /**
-         * 创建一个原子类
+         * @return 之后提交的任务是否使用CPU线程池
          */
-        private final AtomicInteger mSubmittedCount = new AtomicInteger();
+        public boolean isCpuBound() {
+            return isCpuBound;
+        }
 
-        private LinkedBlockingQueue4Util mWorkQueue;
+        /**
+         * @return CPU时间占墙上时间比例的移动平均，0到1
+         */
+        public synchronized float getCpuRatio() {
+            return mCpuRatio;
+        }
 
-        ThreadPoolExecutor4Util(int corePoolSize, int maximumPoolSize,
-                                long keepAliveTime, TimeUnit unit,
-                                LinkedBlockingQueue4Util workQueue,
-                                ThreadFactory threadFactory) {
-            super(corePoolSize, maximumPoolSize,
-                    keepAliveTime, unit,
-                    workQueue,
-                    threadFactory
-            );
-            workQueue.mPool = this;
-            mWorkQueue = workQueue;
+        public synchronized long getSampleCount() {
+            return mSampleCount;
         }
 
-        private int getSubmittedCount() {
-            return mSubmittedCount.get();
+        /**
+         * @return 在IO线程池和CPU线程池之间切换的次数
+         */
+        public synchronized long getSwitchCount() {
+            return mSwitchCount;
+        }
+
+        public long getIoCount() {
+            return mIoCount.get();
+        }
+
+        public long getCpuCount() {
+            return mCpuCount.get();
         }
 
+        @NonNull
         @Override
-        protected void afterExecute(Runnable r, Throwable t) {
-            // 先自减再获取减1后的值
-            mSubmittedCount.decrementAndGet();
-            super.afterExecute(r, t);
+        public synchronized String toString() {
+            return mTaskClass.getName() + "{pool=" + (isCpuBound ? "cpu" : "io")
+                    + ", cpuRatio=" + mCpuRatio
+                    + ", samples=" + mSampleCount
+                    + ", ioCount=" + getIoCount()
+                    + ", cpuCount=" + getCpuCount()
+                    + ", switches=" + mSwitchCount + "}";
+        }
+    }
+
+    /**
+     * 获取当前线程的CPU时间和分配的内存，不支持时返回-1
+     */
+    private interface ThreadMeter {
+
+        /**
+         * 开启或关闭统计
+         * @param enabled 是否开启
+         */
+        void setEnabled(boolean enabled);
+
+        /**
+         * @return 当前线程的CPU时间，纳秒
+         */
+        long currentThreadCpuNanos();
+
+        /**
+         * @return 当前线程累计分配的内存，字节
+         */
+        long currentThreadAllocatedBytes();
+    }
+
+    /**
+     * 第一次用到时才根据运行环境选择实现
+     */
+    private static final class ThreadMeterHolder {
+
+        private static final ThreadMeter METER = "Dalvik".equals(System.getProperty("java.vm.name"))
+                ? new AndroidThreadMeter() : new JvmThreadMeter();
+    }
+
+    /**
+     * Android上的实现
+     */
+    @SuppressWarnings("deprecation")
+    private static final class AndroidThreadMeter implements ThreadMeter {
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            if (enabled) {
+                Debug.startAllocCounting();
+            } else {
+                Debug.stopAllocCounting();
+            }
         }
 
         @Override
-        public void execute(@NonNull Runnable command) {
-            if (this.isShutdown()) {
-                return;
+        public long currentThreadCpuNanos() {
+            return Debug.threadCpuTimeNanos();
+        }
+
+        @Override
+        public long currentThreadAllocatedBytes() {
+            // 返回的是int，按无符号处理，溢出的那一次前后相减为负数，统计时会被忽略
+            return Debug.getThreadAllocSize() & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * JVM上的实现，Android的SDK里没有java.lang.management，所以通过反射调用ThreadMXBean
+     */
+    private static final class JvmThreadMeter implements ThreadMeter {
+
+        private Object mThreadMxBean;
+        private Method mCpuTimeMethod;
+        private Method mAllocatedBytesMethod;
+
+        JvmThreadMeter() {
+            try {
+                mThreadMxBean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                mCpuTimeMethod = Class.forName("java.lang.management.ThreadMXBean")
+                        .getMethod("getCurrentThreadCpuTime");
+                Class<?> sunThreadMxBean = Class.forName("com.sun.management.ThreadMXBean");
+                if (sunThreadMxBean.isInstance(mThreadMxBean)) {
+                    mAllocatedBytesMethod = sunThreadMxBean.getMethod("getThreadAllocatedBytes", long.class);
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "ThreadMXBean is not available.", t);
+            }
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+        }
+
+        @Override
+        public long currentThreadCpuNanos() {
+            if (mCpuTimeMethod == null) {
+                return -1;
             }
-            // 先自增再获取加1后的值
-            mSubmittedCount.incrementAndGet();
             try {
-                super.execute(command);
-            } catch (RejectedExecutionException ignore) {
-                Log.e(TAG, "This will not happen!");
-                mWorkQueue.offer(command);
+                return (Long) mCpuTimeMethod.invoke(mThreadMxBean);
             } catch (Throwable t) {
-                mSubmittedCount.decrementAndGet();
+                return -1;
+            }
+        }
+
+        @Override
+        public long currentThreadAllocatedBytes() {
+            if (mAllocatedBytesMethod == null) {
+                return -1;
+            }
+            try {
+                return (Long) mAllocatedBytesMethod.invoke(mThreadMxBean, Thread.currentThread().getId());
+            } catch (Throwable t) {
+                return -1;
             }
         }
     }
 
     /**
-     * 任务队列类
-     * LinkedBlockingQueue这个队列接收到任务的时候，如果当前线程数小于核心线程数，则新建线程(核心线程)处理任务；
-     * 如果当前线程数等于核心线程数，则进入队列等待。
-     * 由于这个队列没有最大值限制，即所有超过核心线程数的任务都将被添加到队列中，
-     * 这也就导致了 maximumPoolSize 的设定失效，因为总线程数永远不会超过 corePoolSize
-     *
-     * size()是线程队伍排列的总数
-     *
-     * TYPE_SINGLE：
-     * 该类型的线程池mPool一直只有一条线程，并且size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
-     * TYPE_CACHED：
-     * 该类型会先给线程池添加线程，总数128，这时候offer一直返回false,当线程数达到128条后，就会加入线程队伍队列，此时offer返回true
-     * 当60秒闲置时间过了以后，线程池mPool会慢慢清空线程，此时再次调用，就会重新添加线程到线程池，重走上面的步骤
-     * TYPE_IO:
-     * 涉及到网络、磁盘IO的任务都是IO密集型任务
-     * 核心线程和总线程是根据cpu计算的，是cpu的2倍+1，并且队列size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
-     * TYPE_CPU:
-     * 核心线程和总线程是根据cpu计算的，总线程是cpu的数量+1，总线程是cpu的2倍+1
-     * 并且队列size会自动随着队列增长而增长，没有最大值的限制。当线程没加入队列前，offer一直为true
-     * 其他，例如Fixed：
-     * 核心线程和总线程是自定义的，并且size会自动随着队列增长而增长，没有最大值的限制。offer一直为true
-     *
+     * 把ThreadUtils的线程优先级(1到10)映射到系统调度器上
+     * Thread.setPriority在Linux内核的系统上基本不起作用，所有线程按同样的nice值竞争CPU
      */
-    private static final class LinkedBlockingQueue4Util extends LinkedBlockingQueue<Runnable> {
+    public interface ThreadPriorityBackend {
 
         /**
-         * 线程池
+         * 设置当前线程的调度优先级，在要调整的线程中调用
+         *
+         * @param priority 1到10，同Thread.setPriority
          */
-        private volatile ThreadPoolExecutor4Util mPool;
+        void setCurrentThreadPriority(int priority);
 
-        private int mCapacity = Integer.MAX_VALUE;
+        /**
+         * @return 是否可以反复调整，共用线程的优先级视图执行完任务后要改回线程池的优先级，不能改回去的只在线程创建时调整
+         */
+        boolean isReversible();
+    }
+
+    /**
+     * 第一次用到时才根据运行环境选择实现
+     */
+    private static final class ThreadPriorityBackendHolder {
 
-        LinkedBlockingQueue4Util() {
-            super();
-        }
+        private static final ThreadPriorityBackend BACKEND = createBackend();
 
-        LinkedBlockingQueue4Util(boolean isAddSubThreadFirstThenAddQueue) {
-            super();
-            if (isAddSubThreadFirstThenAddQueue) {
-                mCapacity = 0;
+        private static ThreadPriorityBackend createBackend() {
+            if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
+                return new AndroidThreadPriorityBackend();
             }
+            if (new File("/proc/thread-self").exists()) {
+                return new ReniceThreadPriorityBackend();
+            }
+            return new JavaThreadPriorityBackend();
         }
+    }
 
-        LinkedBlockingQueue4Util(int capacity) {
-            super();
-            mCapacity = capacity;
-        }
+    /**
+     * 优先级对应的nice值，下标是优先级，和android.os.Process的THREAD_PRIORITY_*一致：
+     * 1是LOWEST，4是BACKGROUND，5是DEFAULT，7是FOREGROUND，8是DISPLAY，10是URGENT_DISPLAY
+     */
+    private static final int[] PRIORITY_TO_NICE = {0, 19, 16, 13, 10, 0, -1, -2, -4, -6, -8};
+
+    private static int toNice(int priority) {
+        return PRIORITY_TO_NICE[Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority))];
+    }
+
+    /**
+     * Android上的实现，通过Process.setThreadPriority设置nice值
+     */
+    private static final class AndroidThreadPriorityBackend implements ThreadPriorityBackend {
 
         @Override
-        public boolean offer(@NonNull Runnable runnable) {
-            Log.d(TAG,"offer mCapacity:" + mCapacity + "size():" + size() + "mPool:" + (mPool != null ? mPool.getPoolSize() : "null"));
-            boolean isOffer;
-            // 如果线程数最大值 小于等于 当前线程数 并且 线程池不为空 并且 线程池的线程总数小于线程池的线程总数值
-            if (mCapacity <= size() &&
-                    mPool != null && mPool.getPoolSize() < mPool.getMaximumPoolSize()) {
-                // 返回false表示不加入队列
-                isOffer = false;
-                if (!isOffer) {
-                    Log.d(TAG, "isOffer:" + isOffer);
-                }
-                return isOffer;
-            }
-            isOffer = super.offer(runnable);
-            if (!isOffer) {
-                Log.d(TAG, "isOffer:" + isOffer);
+        public void setCurrentThreadPriority(int priority) {
+            try {
+                Process.setThreadPriority(toNice(priority));
+            } catch (IllegalArgumentException | SecurityException e) {
+                Log.w(TAG, "setThreadPriority failed: " + priority, e);
             }
-            return isOffer;
+        }
+
+        @Override
+        public boolean isReversible() {
+            return true;
         }
     }
 
     /**
-     * 线程工厂类
+     * Linux的JVM上的实现，JVM默认忽略Thread.setPriority，这里通过renice设置当前线程的nice值
+     * 每次调整都要启动一个进程，并且没有权限时只能调低不能调回去，所以只在线程创建时调整
      */
-    static final class UtilsThreadFactory extends AtomicLong
-            implements ThreadFactory {
-        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
-        private static final long serialVersionUID = -9209200509960368598L;
-        private final String namePrefix;
-        private final int priority;
-        private final boolean isDaemon;
+    private static final class ReniceThreadPriorityBackend implements ThreadPriorityBackend {
 
-        UtilsThreadFactory(String prefix, int priority) {
-            this(prefix, priority, false);
-        }
+        /**
+         * 当前线程的nice值，线程创建时继承了进程的nice值，这里按0处理
+         */
+        private final ThreadLocal<Integer> mNice = new ThreadLocal<>();
+        /**
+         * 调高优先级被拒绝过(没有CAP_SYS_NICE)，之后不再尝试
+         */
+        private volatile boolean isRaiseDenied;
 
-        UtilsThreadFactory(String prefix, int priority, boolean isDaemon) {
-            namePrefix = prefix + "-pool-" +
-                    POOL_NUMBER.getAndIncrement() +
-                    "-thread-";
-            this.priority = priority;
-            this.isDaemon = isDaemon;
+        @Override
+        public void setCurrentThreadPriority(int priority) {
+            int nice = toNice(priority);
+            Integer current = mNice.get();
+            int currentNice = current == null ? 0 : current;
+            if (nice == currentNice || (nice < currentNice && isRaiseDenied)) {
+                return;
+            }
+            try {
+                String tid = new File("/proc/thread-self").getCanonicalFile().getName();
+                java.lang.Process process = new ProcessBuilder("renice", "-n", String.valueOf(nice), "-p", tid)
+                        .redirectErrorStream(true)
+                        .start();
+                if (process.waitFor() == 0) {
+                    mNice.set(nice);
+                } else if (nice < currentNice) {
+                    isRaiseDenied = true;
+                    Log.w(TAG, "renice denied, priority above normal is not applied.");
+                }
+                process.destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.w(TAG, "renice failed: " + priority, e);
+            }
         }
 
         @Override
-        public Thread newThread(@NonNull Runnable r) {
-            Thread t = new Thread(r, namePrefix + getAndIncrement()) {
-                @Override
-                public void run() {
-                    try {
-                        super.run();
-                    } catch (Throwable t) {
-                        Log.e("ThreadUtils", "Request threw uncaught throwable", t);
-                    }
-                }
-            };
-            t.setDaemon(isDaemon);
-            t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
-                @Override
-                public void uncaughtException(Thread t, Throwable e) {
-                    System.out.println(e);
-                }
-            });
-            t.setPriority(priority);
-            return t;
+        public boolean isReversible() {
+            return false;
         }
     }
 
-    public abstract static class BaseSimpleBaseTask<T> extends BaseTask<T> {
+    /**
+     * 其他环境，只有Thread.setPriority
+     */
+    private static final class JavaThreadPriorityBackend implements ThreadPriorityBackend {
 
         @Override
-        public void onCancel() {
-            Log.e("ThreadUtils", "onCancel: " + Thread.currentThread());
+        public void setCurrentThreadPriority(int priority) {
         }
 
         @Override
-        public void onFail(Throwable t) {
-            Log.e("ThreadUtils", "onFail: ", t);
+        public boolean isReversible() {
+            return true;
         }
-
     }
 
-    public abstract static class BaseTask<T> implements Runnable {
-
-        private static final int NEW = 0;
-        private static final int RUNNING = 1;
-        private static final int EXCEPTIONAL = 2;
-        private static final int COMPLETING = 3;
-        private static final int CANCELLED = 4;
-        private static final int INTERRUPTED = 5;
-        private static final int TIMEOUT = 6;
+    /**
+     * 一次性的结果，一个线程setValue，其他线程getValue等待结果或者通过onValue监听结果
+     * 只有一个volatile状态：未设置时是等待者链表(可以为null)，设置后是结果本身，
+     * 所以已经有结果时getValue不需要任何分配和加锁；等待时先自旋一小段时间，大部分短等待不需要挂起线程
+     */
+    public static class SyncValue<T> {
 
         /**
-         * 原子类的状态
+         * 挂起之前自旋检查的次数
          */
-        private final AtomicInteger state = new AtomicInteger(NEW);
+        private static final int SPIN_TRIES = 256;
 
-        private volatile boolean isSchedule;
         /**
-         * 共享变量 线程
+         * 结果为null时保存的值
          */
-        private volatile Thread runner;
+        private static final Object NULL_VALUE = new Object();
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<SyncValue, Object> STATE =
+                AtomicReferenceFieldUpdater.newUpdater(SyncValue.class, Object.class, "mState");
 
         /**
-         * 可以实现循环或延迟任务的线程池
+         * 未设置时是等待者链表{@link Waiter}或者null，设置后是结果
          */
-        private ScheduledExecutorService mExecutorService;
-        private long mTimeoutMillis;
-        private OnTimeoutListener mTimeoutListener;
+        private volatile Object mState;
 
-        private Executor deliver;
+        /**
+         * 设置结果，只有第一次设置有效
+         *
+         * @param value 结果
+         */
+        public void setValue(T value) {
+            Object state;
+            do {
+                state = mState;
+                if (isDone(state)) {
+                    return;
+                }
+            } while (!STATE.compareAndSet(this, state, value == null ? NULL_VALUE : value));
+            // 唤醒等待的线程，分发监听
+            for (Waiter waiter = (Waiter) state; waiter != null; waiter = waiter.next) {
+                waiter.release(value);
+            }
+        }
 
         /**
-         * 线程方法
-         * @return 实体
-         * @throws Throwable 异常
+         * @return 是否已经设置了结果
          */
-        public abstract T doInBackground() throws Throwable;
+        public boolean isDone() {
+            return isDone(mState);
+        }
 
         /**
-         * 成功
-         * @param result 实体
+         * 等待并返回结果，被中断时保留中断标记并返回null
+         *
+         * @return 结果
          */
-        public abstract void onSuccess(T result);
+        public T getValue() {
+            try {
+                return await(false, 0L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (TimeoutException e) {
+                // 不限时不会超时
+                return null;
+            }
+        }
 
         /**
-         * 取消
+         * 最多等待timeout并返回结果
+         *
+         * @param timeout 时长
+         * @param unit    时长单位
+         * @return 结果
+         * @throws InterruptedException 等待时被中断
+         * @throws TimeoutException     超时还没有结果
          */
-        public abstract void onCancel();
+        public T getValue(long timeout, @NonNull TimeUnit unit) throws InterruptedException, TimeoutException {
+            return await(true, unit.toNanos(timeout));
+        }
 
         /**
-         * 失败
-         * @param t 异常
+         * 有结果后在ui线程回调，已经有结果时马上回调
+         *
+         * @param listener 回调
          */
-        public abstract void onFail(Throwable t);
+        public void onValue(@NonNull OnValueListener<T> listener) {
+            onValue(listener, getGlobalDeliver());
+        }
 
-        @Override
-        public void run() {
-            // 判断是否循环计划内的
-            if (isSchedule) {
-                // 因为如果是在循环内的，那么runner还是之前的
-                if (runner == null) {
-                    // 判断当前状态如果是New，便赋值state=RUNNING，如果不是New，便返回
-                    if (!state.compareAndSet(NEW, RUNNING)) {
-                        return;
-                    }
-                    // 获取当前线程
-                    runner = Thread.currentThread();
-                    if (mTimeoutListener != null) {
-                        Log.w("ThreadUtils", "Scheduled task doesn't support timeout.");
-                    }
-                } else {
-                    // 如果不是RUNNING便直接返回
-                    if (state.get() != RUNNING) {
-                        return;
-                    }
-                }
-            } else {
-                // 判断当前状态如果是New，便赋值state=RUNNING，如果不是New，便返回
-                if (!state.compareAndSet(NEW, RUNNING)) {
+        /**
+         * 有结果后在指定的executor中回调，已经有结果时马上回调
+         *
+         * @param listener 回调
+         * @param executor 执行回调的executor
+         */
+        public void onValue(@NonNull OnValueListener<T> listener, @NonNull Executor executor) {
+            Waiter waiter = new Waiter(null, listener, executor);
+            Object state;
+            do {
+                state = mState;
+                if (isDone(state)) {
+                    waiter.release(decode(state));
                     return;
                 }
-                // 获取当前线程
-                runner = Thread.currentThread();
-                if (mTimeoutListener != null) {
-                    // 实例化 循环或延迟任务的线程池
-                    mExecutorService = new ScheduledThreadPoolExecutor(1, (ThreadFactory) Thread::new);
-                    // 调用了延迟运行任务
-                    mExecutorService.schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            if (!isDone() && mTimeoutListener != null) {
-                                timeout();
-                                mTimeoutListener.onTimeout();
-                            }
-                        }
-                    }, mTimeoutMillis, TimeUnit.MILLISECONDS);
+                waiter.next = (Waiter) state;
+            } while (!STATE.compareAndSet(this, state, waiter));
+        }
+
+        private T await(boolean timed, long nanos) throws InterruptedException, TimeoutException {
+            Object state = mState;
+            if (isDone(state)) {
+                return decode(state);
+            }
+            // 短时间的等待大部分在自旋内就能拿到结果
+            for (int i = 0; i < SPIN_TRIES; i++) {
+                if (isDone(state = mState)) {
+                    return decode(state);
                 }
             }
+            final long deadline = timed ? System.nanoTime() + nanos : 0L;
+            Thread current = Thread.currentThread();
+            Waiter waiter = new Waiter(current, null, null);
+            SYNC_VALUE_WAITERS.add(current);
             try {
-                // 执行doInBackground方法获取值
-                final T result = doInBackground();
-                // 判断是否循环计划内的
-                if (isSchedule) {
-                    // 如果不是RUNNING便直接返回
-                    if (state.get() != RUNNING) {
-                        return;
+                do {
+                    state = mState;
+                    if (isDone(state)) {
+                        return decode(state);
                     }
-                    getDeliver().execute(() -> onSuccess(result));
-                } else {
-                    // 判断当前状态如果是RUNNING，便赋值state=COMPLETING，如果不是RUNNING，便返回
-                    if (!state.compareAndSet(RUNNING, COMPLETING)) {
-                        return;
+                    waiter.next = (Waiter) state;
+                } while (!STATE.compareAndSet(this, state, waiter));
+                for (; ; ) {
+                    if (isDone(state = mState)) {
+                        return decode(state);
+                    }
+                    if (Thread.interrupted()) {
+                        removeWaiter(waiter);
+                        throw new InterruptedException();
+                    }
+                    if (timed) {
+                        nanos = deadline - System.nanoTime();
+                        if (nanos <= 0L) {
+                            removeWaiter(waiter);
+                            throw new TimeoutException();
+                        }
+                        LockSupport.parkNanos(this, nanos);
+                    } else {
+                        LockSupport.park(this);
                     }
-                    // 执行成功方法，getDeliver()已经封装了跳转ui线程
-                    getDeliver().execute(() -> {
-                        onSuccess(result);
-                        onDone();
-                    });
-                }
-            } catch (InterruptedException ignore) {
-                // 被中断了，判断当前状态如果是CANCELLED，便赋值state=INTERRUPTED
-                state.compareAndSet(CANCELLED, INTERRUPTED);
-            } catch (final Throwable throwable) {
-                // 如果出现异常了，判断当前状态如果是RUNNING，便赋值EXCEPTIONAL
-                if (!state.compareAndSet(RUNNING, EXCEPTIONAL)) {
-                    return;
                 }
-                // 执行成功方法，getDeliver()已经封装了跳转ui线程
-                getDeliver().execute(() -> {
-                    onFail(throwable);
-                    onDone();
-                });
+            } finally {
+                SYNC_VALUE_WAITERS.remove(current);
             }
         }
 
-        public void cancel() {
-            cancel(true);
-        }
-
-        public void cancel(boolean mayInterruptIfRunning) {
-            synchronized (state) {
-                if (state.get() > RUNNING) {
+        /**
+         * 超时或者被中断的等待者从链表中移除，否则反复限时等待会让链表一直变长
+         * 和FutureTask.removeWaiter一样，一次遍历移除所有已取消的节点，遇到竞争从头重来
+         */
+        private void removeWaiter(Waiter waiter) {
+            waiter.thread = null;
+            waiter.isCancelled = true;
+            retry:
+            for (; ; ) {
+                Object state = mState;
+                if (!(state instanceof Waiter)) {
+                    // 已经有结果或者链表为空
                     return;
                 }
-                state.set(CANCELLED);
-            }
-            if (mayInterruptIfRunning) {
-                if (runner != null) {
-                    runner.interrupt();
-                }
-            }
-
-            getDeliver().execute(() -> {
-                onCancel();
-                onDone();
-            });
-        }
-
-        private void timeout() {
-            synchronized (state) {
-                if (state.get() > RUNNING) {
-                    return;
+                for (Waiter pred = null, q = (Waiter) state, s; q != null; q = s) {
+                    s = q.next;
+                    if (!q.isCancelled) {
+                        pred = q;
+                    } else if (pred != null) {
+                        pred.next = s;
+                        if (pred.isCancelled) {
+                            continue retry;
+                        }
+                    } else if (!STATE.compareAndSet(this, q, s)) {
+                        continue retry;
+                    }
                 }
-                state.set(TIMEOUT);
-            }
-            if (runner != null) {
-                runner.interrupt();
+                return;
             }
-            onDone();
-        }
-
-
-        public boolean isCanceled() {
-            return state.get() >= CANCELLED;
         }
 
-        public boolean isDone() {
-            return state.get() > RUNNING;
+        private static boolean isDone(Object state) {
+            return state != null && !(state instanceof Waiter);
         }
 
-        public BaseTask<T> setDeliver(Executor deliver) {
-            this.deliver = deliver;
-            return this;
+        @SuppressWarnings("unchecked")
+        private T decode(Object state) {
+            return state == NULL_VALUE ? null : (T) state;
         }
 
         /**
-         * Scheduled task doesn't support timeout.
+         * 等待结果的线程或者监听，组成链表
          */
-        public BaseTask<T> setTimeout(final long timeoutMillis, final OnTimeoutListener listener) {
-            mTimeoutMillis = timeoutMillis;
-            mTimeoutListener = listener;
-            return this;
-        }
+        private static final class Waiter {
 
-        private void setSchedule(boolean isSchedule) {
-            this.isSchedule = isSchedule;
-        }
+            private volatile Thread thread;
+            @SuppressWarnings("rawtypes")
+            private final OnValueListener listener;
+            private final Executor executor;
+            private volatile Waiter next;
+            /**
+             * 等待的线程超时或者被中断，等待移除
+             */
+            private volatile boolean isCancelled;
 
-        private Executor getDeliver() {
-            if (deliver == null) {
-                return getGlobalDeliver();
+            @SuppressWarnings("rawtypes")
+            Waiter(Thread thread, OnValueListener listener, Executor executor) {
+                this.thread = thread;
+                this.listener = listener;
+                this.executor = executor;
             }
-            return deliver;
-        }
 
-        @CallSuper
-        protected void onDone() {
-            TASK_POOL_MAP.remove(this);
-            if (mExecutorService != null) {
-                mExecutorService.shutdownNow();
-                mExecutorService = null;
-                mTimeoutListener = null;
+            @SuppressWarnings("unchecked")
+            void release(final Object value) {
+                if (listener != null) {
+                    executor.execute(() -> listener.onValue(value));
+                    return;
+                }
+                Thread waiterThread = thread;
+                if (waiterThread != null) {
+                    thread = null;
+                    LockSupport.unpark(waiterThread);
+                }
             }
         }
 
-        public interface OnTimeoutListener {
+        /**
+         * 结果回调
+         *
+         * @param <T> 结果类型
+         */
+        public interface OnValueListener<T> {
             /**
-             * 超时
+             * 有结果了
+             *
+             * @param value 结果
              */
-            void onTimeout();
-        }
-
-        @Override
-        public int hashCode() {
-            return super.hashCode();
-        }
-
-        @Override
-        public boolean equals(@Nullable Object obj) {
-            return super.equals(obj);
-        }
-    }
-
-    public static class SyncValue<T> {
-
-        private CountDownLatch mLatch = new CountDownLatch(1);
-        private AtomicBoolean mFlag = new AtomicBoolean();
-        private T mValue;
-
-        public void setValue(T value) {
-            if (mFlag.compareAndSet(false, true)) {
-                mValue = value;
-                mLatch.countDown();
-            }
-        }
-
-        public T getValue() {
-            if (!mFlag.get()) {
-                try {
-                    mLatch.await();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            return mValue;
+            void onValue(T value);
         }
     }
 
@@ -0,0 +1,156 @@
+package com.zhongjh.threadpoolexample;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+/**
+ * 不加锁的售票器，和{@link SynchronizedEntity}一样保证不会超卖，但是卖票的线程之间基本没有竞争
+ * 总库存通过CAS扣减；每个线程按分段从总库存批量预留一部分票，之后在自己的分段里卖，不再竞争总库存；
+ * 总库存卖完后，从其他分段拿回还没卖出的票，所以不会出现还有票却卖不出去的情况
+ * 每个分段单独记录卖出的票数，剩余票数 = 总票数 - 所有分段卖出数之和
+ *
+ * @author zhongjh
+ * @date 2026/10/19
+ */
+public class TicketDispenser {
+
+    private static final int STRIPE_COUNT = ThreadUtils.Stripe4Util.DEFAULT_COUNT;
+
+    private final int mTotal;
+    private final int mBatchSize;
+    /**
+     * 还没有被任何分段预留的票
+     */
+    private final ThreadUtils.PaddedAtomicLong mStock = new ThreadUtils.PaddedAtomicLong();
+    /**
+     * 每个分段预留了还没卖出的票、已经卖出的票，每个元素都填充到单独的缓存行
+     */
+    private final ThreadUtils.PaddedAtomicLong[] mReserved = new ThreadUtils.PaddedAtomicLong[STRIPE_COUNT];
+    private final ThreadUtils.PaddedAtomicLong[] mSold = new ThreadUtils.PaddedAtomicLong[STRIPE_COUNT];
+
+    public TicketDispenser(@IntRange(from = 0) int total) {
+        this(total, 32);
+    }
+
+    /**
+     * @param total     总票数
+     * @param batchSize 每个分段一次从总库存预留的票数，越大竞争越少，但卖到最后需要从其他分段拿回的票越多
+     */
+    public TicketDispenser(@IntRange(from = 0) int total, @IntRange(from = 1) int batchSize) {
+        mTotal = total;
+        mBatchSize = batchSize;
+        mStock.set(total);
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mReserved[i] = new ThreadUtils.PaddedAtomicLong();
+            mSold[i] = new ThreadUtils.PaddedAtomicLong();
+        }
+    }
+
+    /**
+     * 卖一张票
+     *
+     * @return 是否卖出，已经卖完时返回false
+     */
+    public boolean tryClaim() {
+        int index = stripeIndex();
+        ThreadUtils.PaddedAtomicLong reserved = mReserved[index];
+        for (; ; ) {
+            long count = reserved.get();
+            if (count > 0) {
+                if (reserved.compareAndSet(count, count - 1)) {
+                    mSold[index].incrementAndGet();
+                    return true;
+                }
+                continue;
+            }
+            // 自己分段的预留卖完了，从总库存再预留一批，其中一张直接卖出
+            long batch = reserveFromStock();
+            if (batch > 0) {
+                if (batch > 1) {
+                    reserved.addAndGet(batch - 1);
+                }
+                mSold[index].incrementAndGet();
+                return true;
+            }
+            // 总库存也没有了，从其他分段拿回没卖出的票
+            if (claimFromOtherStripes(index)) {
+                return true;
+            }
+            if (getRemaining() <= 0) {
+                return false;
+            }
+            // 还有票正在从总库存转移到某个分段，或者正在被卖出，等它完成后再看
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 把当前线程所在分段预留的票还给总库存，卖票的线程结束时调用，其他线程就不需要再从这个分段拿票
+     */
+    public void release() {
+        long count = mReserved[stripeIndex()].getAndSet(0);
+        if (count > 0) {
+            mStock.addAndGet(count);
+        }
+    }
+
+    /**
+     * @return 剩余的票数；有线程正在卖票时，返回值在调用开始和结束时的真实剩余数之间，没有并发卖票时就是精确值
+     */
+    public int getRemaining() {
+        long sold = 0;
+        for (ThreadUtils.PaddedAtomicLong stripe : mSold) {
+            sold += stripe.get();
+        }
+        return (int) (mTotal - sold);
+    }
+
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * 剩下的票少时每次少预留一些，避免最后的票集中在少数分段里
+     *
+     * @return 预留到的票数，总库存为空时返回0
+     */
+    private long reserveFromStock() {
+        for (; ; ) {
+            long stock = mStock.get();
+            if (stock <= 0) {
+                return 0;
+            }
+            long batch = Math.min(mBatchSize, stock / STRIPE_COUNT + 1);
+            if (mStock.compareAndSet(stock, stock - batch)) {
+                return batch;
+            }
+        }
+    }
+
+    private boolean claimFromOtherStripes(int index) {
+        for (int i = 1; i < STRIPE_COUNT; i++) {
+            ThreadUtils.PaddedAtomicLong reserved = mReserved[(index + i) & (STRIPE_COUNT - 1)];
+            long count;
+            while ((count = reserved.get()) > 0) {
+                if (reserved.compareAndSet(count, count - 1)) {
+                    mSold[index].incrementAndGet();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按线程id分段，同一个线程总是使用同一个分段
+     */
+    private static int stripeIndex() {
+        return ThreadUtils.Stripe4Util.threadHash() & (STRIPE_COUNT - 1);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TicketDispenser{total=" + mTotal + ", remaining=" + getRemaining() + ", stock=" + mStock.get() + "}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.zhongjh.threadpoolexample;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 两个线程轮流执行并交接数据，代替{@link MainActivity}里wait/notify加beShouldSub标志位的写法
+ * wait/notify每次轮换都要膨胀监视器锁，并且一定会挂起和唤醒线程；
+ * 这里轮到谁由一个volatile变量决定，等待时先自旋一会，超过自旋次数才挂起，
+ * 自旋次数根据上一次是否在自旋期间等到来调整，数据放在普通字段里随轮换一起发布，交接不分配对象
+ * 只能有两个线程使用，每个线程固定使用一个参与方
+ *
+ * @author zhongjh
+ * @date 2026/10/19
+ */
+public class TurnHandoff<T> {
+
+    public static final int PARTY_A = 0;
+    public static final int PARTY_B = 1;
+
+    private static final boolean IS_MULTI_CORE = Runtime.getRuntime().availableProcessors() > 1;
+    private static final int MIN_SPINS = 16;
+    private static final int MAX_SPINS = 1 << 14;
+
+    /**
+     * 当前轮到的参与方
+     */
+    private volatile int mTurn;
+    /**
+     * 正在挂起等待的线程，交接的一方改完mTurn后再读取，等待的一方写入后再检查mTurn，至少有一方能看到对方
+     */
+    private volatile Thread mWaiterA;
+    private volatile Thread mWaiterB;
+    /**
+     * 交接的数据，在写mTurn之前写入，读到mTurn之后读取，由mTurn保证可见性
+     */
+    private T mPayload;
+    /**
+     * 每个参与方下次等待的自旋次数，只由自己的线程读写
+     */
+    private final int[] mSpins = {MIN_SPINS, MIN_SPINS};
+
+    /**
+     * @param firstParty 先执行的参与方
+     */
+    public TurnHandoff(@IntRange(from = PARTY_A, to = PARTY_B) int firstParty) {
+        checkParty(firstParty);
+        mTurn = firstParty;
+    }
+
+    /**
+     * 等待轮到自己
+     *
+     * @param party 自己的参与方
+     * @return 对方交接过来的数据，第一次轮到先执行的一方时为null
+     * @throws InterruptedException 等待时被中断
+     */
+    public T awaitTurn(@IntRange(from = PARTY_A, to = PARTY_B) int party) throws InterruptedException {
+        checkParty(party);
+        if (mTurn != party) {
+            waitTurn(party);
+        }
+        return mPayload;
+    }
+
+    /**
+     * 把执行权和数据交给对方，只能在轮到自己时调用
+     *
+     * @param party   自己的参与方
+     * @param payload 交给对方的数据
+     */
+    public void passTurn(@IntRange(from = PARTY_A, to = PARTY_B) int party, T payload) {
+        checkParty(party);
+        if (mTurn != party) {
+            throw new IllegalStateException("Party " + party + " does not hold the turn.");
+        }
+        mPayload = payload;
+        int other = party ^ 1;
+        mTurn = other;
+        Thread waiter = other == PARTY_A ? mWaiterA : mWaiterB;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * 交给对方后等待对方交回来，一次来回
+     *
+     * @return 对方交回来的数据
+     */
+    public T handoff(@IntRange(from = PARTY_A, to = PARTY_B) int party, T payload) throws InterruptedException {
+        passTurn(party, payload);
+        return awaitTurn(party);
+    }
+
+    /**
+     * @return 当前轮到的参与方
+     */
+    public int getTurn() {
+        return mTurn;
+    }
+
+    private void waitTurn(int party) throws InterruptedException {
+        int spins = mSpins[party];
+        if (IS_MULTI_CORE) {
+            // 单核上对方在自旋期间不可能执行，不自旋
+            for (int i = 0; i < spins; i++) {
+                if (mTurn == party) {
+                    mSpins[party] = Math.min(spins << 1, MAX_SPINS);
+                    return;
+                }
+            }
+        }
+        mSpins[party] = Math.max(spins >> 1, MIN_SPINS);
+        Thread current = Thread.currentThread();
+        setWaiter(party, current);
+        try {
+            while (mTurn != party) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            setWaiter(party, null);
+        }
+    }
+
+    private void setWaiter(int party, Thread thread) {
+        if (party == PARTY_A) {
+            mWaiterA = thread;
+        } else {
+            mWaiterB = thread;
+        }
+    }
+
+    private static void checkParty(int party) {
+        if (party != PARTY_A && party != PARTY_B) {
+            throw new IllegalArgumentException("party must be PARTY_A or PARTY_B: " + party);
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TurnHandoff{turn=" + mTurn + ", spins=" + mSpins[PARTY_A] + "/" + mSpins[PARTY_B] + "}";
+    }
+}
@@ -0,0 +1,77 @@
+package com.zhongjh.threadpoolexample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 循环任务取消后不能再唤醒线程池，也不能留在TASK_POOL_MAP和定时队列里
+ * 和MainActivity里的testFixedPeriodCancel相同的场景，在JVM上运行并断言
+ */
+public class FixedPeriodCancelTest {
+
+    private static final int COUNT = 1000;
+    private static final long PERIOD_MILLIS = 20;
+
+    @Test
+    public void cancelStopsWakeUpsAndReleasesTasks() throws InterruptedException {
+        // JVM上没有主线程Looper，回调直接在任务线程执行
+        ThreadUtils.setDeliver(Runnable::run);
+        int registeredBefore = ThreadUtils.getRegisteredTaskCount();
+        int scheduledBefore = ThreadUtils.getScheduledCount();
+        final AtomicInteger wakeUpCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(4, 4,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            public void execute(Runnable command) {
+                // 记录线程池被定时器唤醒的次数
+                wakeUpCount.incrementAndGet();
+                super.execute(command);
+            }
+        };
+        List<ThreadUtils.BaseTask<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            ThreadUtils.BaseTask<Object> task = new ThreadUtils.BaseSimpleBaseTask<Object>() {
+                @Override
+                public Object doInBackground() {
+                    return null;
+                }
+
+                @Override
+                public void onSuccess(Object result) {
+                }
+            };
+            tasks.add(task);
+            ThreadUtils.executeByCustomAtFixRate(pool, task, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        try {
+            Thread.sleep(PERIOD_MILLIS * 10);
+            assertTrue("periodic tasks never ran", pool.getCompletedTaskCount() > 0);
+            for (ThreadUtils.BaseTask<Object> task : tasks) {
+                task.cancel();
+            }
+            // 取消前已经提交到线程池的执行会跑完
+            Thread.sleep(PERIOD_MILLIS * 5);
+            int wakeUps = wakeUpCount.get();
+            long completed = pool.getCompletedTaskCount();
+            Thread.sleep(PERIOD_MILLIS * 25);
+            assertEquals("pool woken up after cancel", wakeUps, wakeUpCount.get());
+            assertEquals("tasks completed after cancel", completed, pool.getCompletedTaskCount());
+            assertEquals("cancelled tasks still registered", registeredBefore, ThreadUtils.getRegisteredTaskCount());
+            assertEquals("timers left in the scheduler", scheduledBefore, ThreadUtils.getScheduledCount());
+            for (ThreadUtils.BaseTask<Object> task : tasks) {
+                assertTrue(task.isCanceled());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
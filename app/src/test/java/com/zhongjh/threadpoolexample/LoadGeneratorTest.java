@@ -0,0 +1,42 @@
+package com.zhongjh.threadpoolexample;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在JVM上运行线程池压测，默认跳过，通过系统属性开启和配置：
+ * ./gradlew :app:testDebugUnitTest --tests '*LoadGeneratorTest' -Dloadtest.enabled=true -Dloadtest.arrival=bursty -Dloadtest.rate=500
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public void runLoad() {
+        Assume.assumeTrue(Boolean.getBoolean("loadtest.enabled"));
+        // JVM上没有主线程Looper，回调直接在任务线程执行
+        ThreadUtils.setDeliver(Runnable::run);
+        String arrival = System.getProperty("loadtest.arrival", "poisson");
+        LoadGenerator generator = new LoadGenerator()
+                .setArrival("bursty".equals(arrival) ? LoadGenerator.ARRIVAL_BURSTY
+                        : "ramp".equals(arrival) ? LoadGenerator.ARRIVAL_RAMP : LoadGenerator.ARRIVAL_POISSON)
+                .setRate(Double.parseDouble(System.getProperty("loadtest.rate", "200")))
+                .setBurstSize(Integer.getInteger("loadtest.burst", 20))
+                .setDuration(Long.getLong("loadtest.duration", 5000L))
+                .setProfile(Double.parseDouble(System.getProperty("loadtest.io", "0.7")),
+                        Long.getLong("loadtest.ioMillis", 20L), Long.getLong("loadtest.cpuMicros", 500L))
+                .setCancel(Double.parseDouble(System.getProperty("loadtest.cancel", "0.05")), 5)
+                .setTimeout(Double.parseDouble(System.getProperty("loadtest.timeout", "0.05")),
+                        Long.getLong("loadtest.timeoutMillis", 50L))
+                .setFixedSize(Integer.getInteger("loadtest.fixed", 4));
+        System.out.println(generator);
+        List<LoadGenerator.Report> reports = generator.runAll(LoadGenerator.POOL_FIXED, LoadGenerator.POOL_SINGLE,
+                LoadGenerator.POOL_CACHED, LoadGenerator.POOL_IO, LoadGenerator.POOL_CPU);
+        for (LoadGenerator.Report report : reports) {
+            System.out.println(report);
+            assertTrue(report.getSubmittedCount() > 0);
+        }
+    }
+}
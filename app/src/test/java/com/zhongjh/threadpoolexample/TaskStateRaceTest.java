@@ -0,0 +1,124 @@
+package com.zhongjh.threadpoolexample;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * BaseTask的取消、完成、失败、超时同时发生时，每个任务只回调一次结束回调，并且不会把中断留给线程池里的下一个任务
+ * 和MainActivity里的testTaskStateRace相同的场景，在JVM上运行
+ */
+public class TaskStateRaceTest {
+
+    private static final int COUNT = 5000;
+
+    @Test
+    public void terminalCallbackExactlyOnce() throws InterruptedException {
+        // JVM上没有主线程Looper，回调直接在任务线程执行
+        ThreadUtils.setDeliver(Runnable::run);
+        final AtomicInteger[] callbacks = new AtomicInteger[COUNT];
+        final CountDownLatch latch = new CountDownLatch(COUNT);
+        final ExecutorService canceller = ThreadUtils.getFixedPool(2);
+        for (int i = 0; i < COUNT; i++) {
+            final AtomicInteger callback = new AtomicInteger();
+            callbacks[i] = callback;
+            final boolean isFail = i % 3 == 2;
+            final Runnable onEnd = () -> {
+                if (callback.incrementAndGet() == 1) {
+                    latch.countDown();
+                }
+            };
+            final ThreadUtils.BaseTask<Integer> task = new ThreadUtils.BaseTask<Integer>() {
+                @Override
+                public Integer doInBackground() throws Throwable {
+                    long end = System.nanoTime() + ThreadLocalRandom.current().nextInt(200) * 1000L;
+                    while (System.nanoTime() < end) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                    if (isFail) {
+                        throw new IOException("fail");
+                    }
+                    return 0;
+                }
+
+                @Override
+                public void onSuccess(Integer result) {
+                    onEnd.run();
+                }
+
+                @Override
+                public void onCancel() {
+                    onEnd.run();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    onEnd.run();
+                }
+            };
+            task.setDeliver(Runnable::run);
+            if (i % 3 == 0) {
+                task.setTimeout(ThreadLocalRandom.current().nextInt(1, 3), onEnd::run);
+            }
+            ThreadUtils.executeByIo(task);
+            if (i % 4 == 0) {
+                canceller.execute(() -> task.cancel(ThreadLocalRandom.current().nextBoolean()));
+            }
+        }
+        assertTrue("missing terminal callbacks: " + latch.getCount(), latch.await(60, TimeUnit.SECONDS));
+        // 等迟到的重复回调和中断
+        Thread.sleep(200);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals("terminal callbacks of task " + i, 1, callbacks[i].get());
+        }
+        assertNoLeakedInterrupt();
+    }
+
+    /**
+     * 取消和超时的中断只能落在被中断的那次执行上，之后在同一个线程池里执行的任务开始时不能带着中断标记
+     */
+    private static void assertNoLeakedInterrupt() throws InterruptedException {
+        final int probeCount = 200;
+        final AtomicInteger interruptedCount = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(probeCount);
+        for (int i = 0; i < probeCount; i++) {
+            ThreadUtils.executeByIo(new ThreadUtils.BaseTask<Void>() {
+                @Override
+                public Void doInBackground() throws Throwable {
+                    if (Thread.currentThread().isInterrupted()) {
+                        interruptedCount.incrementAndGet();
+                    }
+                    // 占住线程一会，让探测任务分散到多个线程上
+                    Thread.sleep(1);
+                    return null;
+                }
+
+                @Override
+                public void onSuccess(Void result) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onCancel() {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFail(Throwable t) {
+                    latch.countDown();
+                }
+            }.setDeliver(Runnable::run));
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals("tasks started with a leaked interrupt", 0, interruptedCount.get());
+    }
+}
@@ -0,0 +1,96 @@
+package com.zhongjh.threadpoolexample;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * CPU竞争：最低和最高优先级的线程池同时执行同样的计算任务，CPU不够用时最高优先级的任务平均先完成
+ * 和MainActivity里的testThreadPriority相同的场景，在Linux的JVM上通过renice生效，renice不可用时跳过
+ */
+public class ThreadPriorityTest {
+
+    private static volatile long sCpuSink;
+
+    @Test
+    public void highPriorityFinishesFirst() throws Exception {
+        Assume.assumeTrue("renice backend not selected", "ReniceThreadPriorityBackend"
+                .equals(ThreadUtils.getThreadPriorityBackend().getClass().getSimpleName()));
+        Assume.assumeTrue("renice unavailable", isReniceAvailable());
+        ThreadUtils.setDeliver(Runnable::run);
+        // 每个线程池的线程数是CPU数的2倍，保证CPU不够用
+        final int count = Runtime.getRuntime().availableProcessors() * 2;
+        ExecutorService lowPool = ThreadUtils.getFixedPool(count, Thread.MIN_PRIORITY);
+        ExecutorService highPool = ThreadUtils.getFixedPool(count, Thread.MAX_PRIORITY);
+        // 先把线程都建好，renice在线程创建时执行，不算在计时里
+        warmUp(lowPool, count);
+        warmUp(highPool, count);
+        final AtomicLong lowDoneNanos = new AtomicLong();
+        final AtomicLong highDoneNanos = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(count * 2);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            lowPool.execute(() -> {
+                burnCpu();
+                lowDoneNanos.addAndGet(System.nanoTime() - start);
+                latch.countDown();
+            });
+            highPool.execute(() -> {
+                burnCpu();
+                highDoneNanos.addAndGet(System.nanoTime() - start);
+                latch.countDown();
+            });
+        }
+        assertTrue("tasks did not finish", latch.await(120, TimeUnit.SECONDS));
+        long lowMeanMillis = TimeUnit.NANOSECONDS.toMillis(lowDoneNanos.get() / count);
+        long highMeanMillis = TimeUnit.NANOSECONDS.toMillis(highDoneNanos.get() / count);
+        System.out.println("mean completion millis, low: " + lowMeanMillis + " high: " + highMeanMillis);
+        assertTrue("high priority mean " + highMeanMillis + "ms is not earlier than low priority mean "
+                + lowMeanMillis + "ms", highMeanMillis < lowMeanMillis);
+    }
+
+    private static boolean isReniceAvailable() {
+        try {
+            String pid = new File("/proc/self").getCanonicalFile().getName();
+            java.lang.Process process = new ProcessBuilder("renice", "-n", "0", "-p", pid)
+                    .redirectErrorStream(true)
+                    .start();
+            return process.waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void warmUp(ExecutorService pool, int count) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(count);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < count; i++) {
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(30, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    private static void burnCpu() {
+        long x = 0;
+        for (long i = 0; i < 50_000_000L; i++) {
+            x += i ^ (x >> 3);
+        }
+        // 写到volatile字段，防止计算被优化掉
+        sCpuSink = x;
+    }
+}